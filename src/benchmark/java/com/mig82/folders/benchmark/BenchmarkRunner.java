@@ -0,0 +1,37 @@
+package com.mig82.folders.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the plugin with {@code mvn -P benchmark test}.
+ * The shape of the synthetic data can be changed with {@code -Dbenchmark.depth}, {@code -Dbenchmark.fanOut} and
+ * {@code -Dbenchmark.propertyCount}, and the benchmarks to run with a regular expression in
+ * {@code -Dbenchmark.include}. Results are written to {@code target/jmh-result.json}.
+ */
+class BenchmarkRunner {
+
+    @Test
+    void runBenchmarks() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", "com\\.mig82\\.folders\\..*Benchmark"))
+                .forks(Integer.getInteger("benchmark.forks", 1))
+                .warmupIterations(Integer.getInteger("benchmark.warmupIterations", 3))
+                .measurementIterations(Integer.getInteger("benchmark.measurementIterations", 5))
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json");
+        for (String param : new String[] {"depth", "fanOut", "propertyCount"}) {
+            String value = System.getProperty("benchmark." + param);
+            if (value != null) {
+                options.param(param, value.split(","));
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,44 @@
+package com.mig82.folders.benchmark;
+
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.StringProperty;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks reading the properties of a single folder, which does not need a running Jenkins.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FolderPropertiesBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PropertiesState {
+
+        /**
+         * The number of properties defined by the folder.
+         */
+        @Param("200")
+        public int propertyCount;
+
+        FolderProperties<?> properties;
+
+        @Setup
+        public void setup() {
+            properties = new FolderProperties<>();
+            properties.setProperties(SyntheticProperties.generate(propertyCount, 0));
+        }
+    }
+
+    @Benchmark
+    public StringProperty[] getProperties(PropertiesState state) {
+        return state.properties.getProperties();
+    }
+}
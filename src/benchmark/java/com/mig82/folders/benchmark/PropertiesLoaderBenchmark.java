@@ -0,0 +1,108 @@
+package com.mig82.folders.benchmark;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesCache;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyLayer;
+import hudson.EnvVars;
+import hudson.model.FreeStyleProject;
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link PropertiesLoader#loadFolderProperties} for a job at the bottom of a synthetic folder tree.
+ * A folder needs a running Jenkins to be created, so the tree lives in the instance started by
+ * {@link JmhBenchmarkState}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PropertiesLoaderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TreeState extends JmhBenchmarkState {
+
+        /**
+         * The number of nested folders above the job.
+         */
+        @Param("8")
+        public int depth;
+
+        /**
+         * The number of folders at each level of the tree, only one of which contains the next level.
+         */
+        @Param("4")
+        public int fanOut;
+
+        /**
+         * The number of properties defined by each folder.
+         */
+        @Param("200")
+        public int propertyCount;
+
+        FreeStyleProject job;
+
+        @Override
+        public void setup() throws Exception {
+            Folder parent = null;
+            for (int level = 0; level < depth; level++) {
+                Folder next = null;
+                for (int sibling = 0; sibling < fanOut; sibling++) {
+                    String name = "folder-" + level + "-" + sibling;
+                    Folder folder = parent == null
+                            ? getJenkins().createProject(Folder.class, name)
+                            : parent.createProject(Folder.class, name);
+                    FolderProperties<?> properties = new FolderProperties<>();
+                    properties.setProperties(SyntheticProperties.generate(propertyCount, level));
+                    folder.addProperty(properties);
+                    if (next == null) {
+                        next = folder;
+                    }
+                }
+                parent = next;
+            }
+            job = parent.createProject(FreeStyleProject.class, "job");
+        }
+    }
+
+    /**
+     * Resolves the properties of a job whose ancestors have already been resolved.
+     */
+    @Benchmark
+    public EnvVars loadCached(TreeState state) {
+        return PropertiesLoader.loadFolderProperties(state.job);
+    }
+
+    /**
+     * Resolves the properties of a job walking all of its ancestors, as happens after a folder is reconfigured.
+     */
+    @Benchmark
+    public EnvVars loadUncached(TreeState state) {
+        PropertiesCache.invalidateAll();
+        return PropertiesLoader.loadFolderProperties(state.job);
+    }
+
+    /**
+     * Resolves the shared layer of a job whose ancestors have already been resolved, without copying it.
+     */
+    @Benchmark
+    public PropertyLayer loadLayerCached(TreeState state) {
+        return PropertiesLoader.loadFolderPropertyLayer(state.job);
+    }
+
+    /**
+     * Resolves the shared layer of a job walking all of its ancestors.
+     */
+    @Benchmark
+    public PropertyLayer loadLayerUncached(TreeState state) {
+        PropertiesCache.invalidateAll();
+        return PropertiesLoader.loadFolderPropertyLayer(state.job);
+    }
+}
@@ -0,0 +1,30 @@
+package com.mig82.folders.benchmark;
+
+import com.mig82.folders.properties.StringProperty;
+
+/**
+ * Generates the properties the benchmarks resolve and expand.
+ * Half of the keys are shared by every level of a folder tree, so that sub-folders shadow their ancestors, and every
+ * fourth value refers to another property or to a variable of the build env.
+ */
+public final class SyntheticProperties {
+
+    private SyntheticProperties() {}
+
+    public static StringProperty[] generate(int count, int level) {
+        StringProperty[] properties = new StringProperty[count];
+        for (int i = 0; i < count; i++) {
+            String key = i % 2 == 0 ? "SHARED_" + i : "LEVEL_" + level + "_" + i;
+            String value;
+            if (i % 4 == 1 && i + 1 < count) {
+                value = "${SHARED_" + (i + 1) + "}/level-" + level;
+            } else if (i % 4 == 3) {
+                value = "${WORKSPACE}/level-" + level + "/" + i;
+            } else {
+                value = "https://registry.example.com/level-" + level + "/" + i;
+            }
+            properties[i] = new StringProperty(key, value);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,65 @@
+package com.mig82.folders.step;
+
+import com.mig82.folders.benchmark.SyntheticProperties;
+import com.mig82.folders.properties.StringProperty;
+import hudson.EnvVars;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks expanding the folder properties into the env of a step run inside {@code withFolderProperties}, which
+ * happens every time a step of its body needs the env.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpanderImplBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ExpanderState {
+
+        /**
+         * The number of folder properties to expand.
+         */
+        @Param("300")
+        public int propertyCount;
+
+        EnvVars overrides;
+        FolderPropertiesStep.ExpanderImpl expander;
+        EnvVars buildEnv;
+
+        @Setup
+        public void setup() {
+            overrides = new EnvVars();
+            for (StringProperty property : SyntheticProperties.generate(propertyCount, 0)) {
+                overrides.put(property.getKey(), property.getValue());
+            }
+            expander = new FolderPropertiesStep.ExpanderImpl(overrides);
+            buildEnv = new EnvVars("WORKSPACE", "/home/jenkins/workspace/job", "PATH", "/usr/bin");
+        }
+    }
+
+    @Benchmark
+    public EnvVars expand(ExpanderState state) throws IOException, InterruptedException {
+        EnvVars env = new EnvVars(state.buildEnv);
+        state.expander.expand(env);
+        return env;
+    }
+
+    /**
+     * What every call to {@link #expand} used to cost, as a baseline.
+     */
+    @Benchmark
+    public EnvVars overrideExpandingAll(ExpanderState state) {
+        EnvVars env = new EnvVars(state.buildEnv);
+        env.overrideExpandingAll(state.overrides);
+        return env;
+    }
+}
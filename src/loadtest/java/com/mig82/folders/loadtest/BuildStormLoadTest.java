@@ -0,0 +1,255 @@
+package com.mig82.folders.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.metrics.Histogram;
+import com.mig82.folders.metrics.ResolutionMetrics;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyFilter;
+import com.mig82.folders.properties.StringProperty;
+import com.mig82.folders.wrappers.ParentFolderBuildWrapper;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+/**
+ * Fires a storm of concurrent builds at a synthetic folder tree, and fails if the time the plugin adds to the start of
+ * the builds, or what it allocates to resolve their properties, goes over budget.
+ * It is only compiled and run with {@code mvn -P loadtest test}. The tree has {@code -Dloadtest.depth} levels of
+ * {@code -Dloadtest.fanOut} sub-folders each, every folder defining {@code -Dloadtest.propertyCount} properties, and
+ * every folder of the last level holding a freestyle job using {@link ParentFolderBuildWrapper} and a Pipeline job
+ * calling {@code withFolderProperties} in {@code -Dloadtest.branches} parallel branches. {@code -Dloadtest.builds}
+ * builds of each kind are scheduled at once, on {@code -Dloadtest.executors} executors.
+ * The budgets are the 99th percentiles of {@code -Dloadtest.maxWrapperMicros} and {@code -Dloadtest.maxStepMicros},
+ * as recorded by {@link ResolutionMetrics}, and {@code -Dloadtest.maxAllocatedBytes} allocated per resolution. The
+ * report is written to {@code target/loadtest-result.json}.
+ */
+@WithJenkins
+class BuildStormLoadTest {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildStormLoadTest.class.getName());
+
+    private static final int DEPTH = Integer.getInteger("loadtest.depth", 3);
+    private static final int FAN_OUT = Integer.getInteger("loadtest.fanOut", 3);
+    private static final int PROPERTY_COUNT = Integer.getInteger("loadtest.propertyCount", 200);
+    private static final int BUILDS = Integer.getInteger("loadtest.builds", 300);
+    private static final int BRANCHES = Integer.getInteger("loadtest.branches", 4);
+    private static final int EXECUTORS = Integer.getInteger("loadtest.executors", 50);
+    private static final long MAX_WRAPPER_MICROS = Long.getLong("loadtest.maxWrapperMicros", 20_000);
+    private static final long MAX_STEP_MICROS = Long.getLong("loadtest.maxStepMicros", 20_000);
+    private static final long MAX_ALLOCATED_BYTES = Long.getLong("loadtest.maxAllocatedBytes", 64 * 1024);
+
+    /**
+     * The resolutions measured for allocations, once the caches are warm.
+     */
+    private static final int ALLOCATION_SAMPLES = 1000;
+
+    /**
+     * Lets queued builds of the same job run side by side instead of being merged into one.
+     */
+    private static final String INDEX = "BUILD_INDEX";
+
+    @Test
+    void buildStorm(JenkinsRule r) throws Exception {
+        ResolutionMetrics.ENABLED = true;
+        r.jenkins.setNumExecutors(EXECUTORS);
+        List<Folder> leaves = new ArrayList<>();
+        createTree(r.jenkins.createProject(Folder.class, "storm"), 0, leaves);
+        List<FreeStyleProject> freestyle = new ArrayList<>();
+        List<WorkflowJob> pipelines = new ArrayList<>();
+        for (Folder leaf : leaves) {
+            freestyle.add(createFreestyle(leaf));
+            pipelines.add(createPipeline(leaf));
+        }
+
+        long start = System.nanoTime();
+        List<Future<? extends Run<?, ?>>> builds = new ArrayList<>();
+        for (int i = 0; i < BUILDS; i++) {
+            builds.add(schedule(freestyle.get(i % freestyle.size()), i));
+            builds.add(schedule(pipelines.get(i % pipelines.size()), i));
+        }
+        for (Future<? extends Run<?, ?>> build : builds) {
+            r.assertBuildStatus(Result.SUCCESS, build.get());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long allocated = measureAllocations(freestyle.get(0));
+        JSONObject report = report(leaves.size(), builds.size(), elapsed, allocated);
+        Path result = Paths.get("target", "loadtest-result.json");
+        Files.createDirectories(result.getParent());
+        Files.writeString(result, report.toString(2), StandardCharsets.UTF_8);
+        LOGGER.log(Level.INFO, "Build storm report, also written to {0}:\n{1}", new Object[] {
+            result.toAbsolutePath(), report.toString(2)
+        });
+
+        List<String> exceeded = new ArrayList<>();
+        checkBudget(exceeded, "wrapper set-up p99 (µs)", micros(ResolutionMetrics.WRAPPER_SET_UP), MAX_WRAPPER_MICROS);
+        checkBudget(exceeded, "withFolderProperties p99 (µs)", micros(ResolutionMetrics.STEP_RUN), MAX_STEP_MICROS);
+        if (allocated >= 0) {
+            checkBudget(exceeded, "bytes allocated per resolution", allocated, MAX_ALLOCATED_BYTES);
+        }
+        assertTrue(exceeded.isEmpty(), "Over budget: " + exceeded);
+    }
+
+    private static void createTree(Folder folder, int level, List<Folder> leaves) throws IOException {
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(generate(level));
+        folder.addProperty(properties);
+        if (level == DEPTH - 1) {
+            leaves.add(folder);
+            return;
+        }
+        for (int i = 0; i < FAN_OUT; i++) {
+            createTree(folder.createProject(Folder.class, "f-" + i), level + 1, leaves);
+        }
+    }
+
+    /**
+     * Half of the keys are defined at every level, so that sub-folders shadow their ancestors.
+     */
+    private static StringProperty[] generate(int level) {
+        StringProperty[] properties = new StringProperty[PROPERTY_COUNT];
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            String key = i % 2 == 0 ? "SHARED_" + i : "LEVEL_" + level + "_" + i;
+            properties[i] = new StringProperty(key, "https://registry.example.com/level-" + level + "/" + i);
+        }
+        return properties;
+    }
+
+    private static FreeStyleProject createFreestyle(Folder folder) throws IOException {
+        FreeStyleProject p = folder.createProject(FreeStyleProject.class, "freestyle");
+        p.setConcurrentBuild(true);
+        p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition(INDEX, "")));
+        p.getBuildWrappersList().add(new ParentFolderBuildWrapper());
+        p.getBuildersList().add(new CheckEnv());
+        return p;
+    }
+
+    private static WorkflowJob createPipeline(Folder folder) throws IOException {
+        WorkflowJob p = folder.createProject(WorkflowJob.class, "pipeline");
+        p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition(INDEX, "")));
+        StringBuilder script = new StringBuilder("def branches = [:]\n");
+        for (int i = 0; i < BRANCHES; i++) {
+            script.append("branches['b-")
+                    .append(i)
+                    .append("'] = { withFolderProperties { if (!env.SHARED_0) { error('SHARED_0 is not set') } } }\n");
+        }
+        script.append("parallel(branches)\n");
+        p.setDefinition(new CpsFlowDefinition(script.toString(), true));
+        return p;
+    }
+
+    private static Future<? extends Run<?, ?>> schedule(Job<?, ?> job, int index) {
+        ParametersAction parameters = new ParametersAction(
+                Collections.<ParameterValue>singletonList(new StringParameterValue(INDEX, String.valueOf(index))));
+        Queue.Item item = Queue.getInstance().schedule2((Queue.Task) job, 0, parameters).getItem();
+        if (item == null) {
+            throw new IllegalStateException("Could not schedule " + job.getFullName());
+        }
+        @SuppressWarnings("unchecked")
+        Future<? extends Run<?, ?>> build = (Future<? extends Run<?, ?>>) item.getFuture();
+        return build;
+    }
+
+    /**
+     * Measures what the wrapper allocates to resolve and copy the properties of a job, once its folders are cached.
+     *
+     * @return The bytes allocated per resolution, or -1 if the JVM cannot tell.
+     */
+    private static long measureAllocations(Job<?, ?> job) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ALLOCATION_SAMPLES; i++) {
+            EnvVars env = new EnvVars();
+            Map<String, String> properties =
+                    PropertiesLoader.select(PropertiesLoader.loadFolderPropertyLayer(job), PropertyFilter.ALL);
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                env.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / ALLOCATION_SAMPLES;
+    }
+
+    private static JSONObject report(int folders, int builds, long elapsed, long allocated) {
+        JSONObject shape = new JSONObject();
+        shape.put("depth", DEPTH);
+        shape.put("fanOut", FAN_OUT);
+        shape.put("propertyCount", PROPERTY_COUNT);
+        shape.put("leafFolders", folders);
+        shape.put("builds", builds);
+        shape.put("branches", BRANCHES);
+        shape.put("executors", EXECUTORS);
+        JSONObject report = new JSONObject();
+        report.put("shape", shape);
+        report.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        report.put("buildsPerSecond", builds * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+        report.put("allocatedBytesPerResolution", allocated);
+        report.put("metrics", ResolutionMetrics.toJSON());
+        return report;
+    }
+
+    private static long micros(Histogram histogram) {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(0.99));
+    }
+
+    private static void checkBudget(List<String> exceeded, String name, long value, long budget) {
+        if (value > budget) {
+            exceeded.add(name + " = " + value + " > " + budget);
+        }
+    }
+
+    /**
+     * Fails the build if the properties of its folders are not in its env.
+     */
+    public static class CheckEnv extends TestBuilder {
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                throws InterruptedException, IOException {
+            EnvVars env = build.getEnvironment(listener);
+            if (env.get("SHARED_0") == null) {
+                listener.error("SHARED_0 is not set");
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.mig82.folders.actions;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyLayer;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.model.Jenkins;
+import jenkins.model.TransientActionFactory;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * An action which shows the properties the jobs of a folder, or a job itself, get from their folders, along with the
+ * folder each of them comes from. The same is available as JSON from {@code json}, which answers a request bearing
+ * the {@code ETag} it last returned with {@code 304 Not Modified} for as long as no folder up the chain changed.
+ * What the item got in the past is served from {@code history} by a {@link PropertiesHistoryView}.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class EffectivePropertiesAction implements Action {
+
+    private final Item item;
+
+    public EffectivePropertiesAction(Item item) {
+        this.item = item;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return item.hasPermission(Item.EXTENDED_READ) ? "symbol-list-outline" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.display_effective_properties_action();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "effective-folder-properties";
+    }
+
+    /**
+     * Resolves the properties of the item from the cache, which only walks the folders which changed since.
+     */
+    private PropertyLayer getLayer() {
+        if (item instanceof AbstractFolder<?> folder) {
+            return PropertiesLoader.loadFolderPropertyLayer(folder);
+        }
+        return PropertiesLoader.loadFolderPropertyLayer((Job<?, ?>) item);
+    }
+
+    /**
+     * Returns the properties the item gets, sorted by key.
+     *
+     * @return Every property, with the folder it is inherited from.
+     */
+    public List<Property> getProperties() {
+        item.checkPermission(Item.EXTENDED_READ);
+        return getProperties(getLayer());
+    }
+
+    /**
+     * Lists the properties visible through a layer, which already leaves out those shadowed by a nearer definition.
+     * Permission to see the item does not extend to its ancestors, so the value of a property is hidden unless the
+     * user may see the properties of the folder defining it, and the name of that folder unless they may read it.
+     */
+    private List<Property> getProperties(PropertyLayer layer) {
+        Map<String, AbstractFolder<?>> folders = new HashMap<>();
+        ItemGroup<?> group = item instanceof AbstractFolder<?> folder ? folder : item.getParent();
+        while (group instanceof AbstractFolder<?> folder) {
+            folders.put(folder.getFullName(), folder);
+            group = folder.getParent();
+        }
+        Map<String, Property> properties = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, String> entry : layer.asMap().entrySet()) {
+            String key = entry.getKey();
+            String folderName = layer.findSource(key).getFolder();
+            AbstractFolder<?> folder = folders.get(folderName);
+            if (folder == null || !folder.hasPermission(Item.READ)) {
+                properties.put(key, new Property(key, null, null));
+            } else {
+                String value = folder.hasPermission(Item.EXTENDED_READ) ? entry.getValue() : null;
+                properties.put(key, new Property(key, value, folderName));
+            }
+        }
+        return new ArrayList<>(properties.values());
+    }
+
+    /**
+     * @return What the item got from its folders in the past, served from {@code history}.
+     */
+    public PropertiesHistoryView getHistory() {
+        item.checkPermission(Item.EXTENDED_READ);
+        return new PropertiesHistoryView(item);
+    }
+
+    /**
+     * Serves the properties the item gets as JSON, unless the client already has them.
+     */
+    public void doJson(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        item.checkPermission(Item.EXTENDED_READ);
+        // Resolved once, so that the tag always matches the properties written.
+        PropertyLayer layer = getLayer();
+        String etag = layer.getETag();
+        rsp.setHeader("ETag", etag);
+        // Clients may keep the properties, but must check they are still current before using them.
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        if (matches(req.getHeader("If-None-Match"), etag)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        // Written by hand, as json-lib would turn values which look like JSON into objects.
+        try (Writer writer = rsp.getWriter()) {
+            writer.write("{\"item\":" + PropertiesFormat.jsonQuote(item.getFullName()) + ",\"properties\":[");
+            String separator = "";
+            for (Property property : getProperties(layer)) {
+                writer.write(separator);
+                writer.write("{\"key\":" + PropertiesFormat.jsonQuote(property.getKey()));
+                // Left out rather than made up when the user may not see them.
+                if (property.getValue() != null) {
+                    writer.write(",\"value\":" + PropertiesFormat.jsonQuote(property.getValue()));
+                }
+                if (property.getFolderName() != null) {
+                    writer.write(",\"folder\":" + PropertiesFormat.jsonQuote(property.getFolderName()));
+                }
+                writer.write("}");
+                separator = ",";
+            }
+            writer.write("]}");
+        }
+    }
+
+    /**
+     * Tells whether an {@code If-None-Match} header lists a tag, comparing tags weakly as it requires.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A property an item gets, and the folder it gets it from.
+     */
+    public static final class Property {
+        private final String key;
+        private final String value;
+        private final String folderName;
+
+        Property(String key, String value, String folderName) {
+            this.key = key;
+            this.value = value;
+            this.folderName = folderName;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The value of the property, or {@code null} if the user may not see the properties of its folder.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return The full name of the folder defining the property, or {@code null} if the user may not read it.
+         */
+        public String getFolderName() {
+            return folderName;
+        }
+
+        /**
+         * @return The folder defining the property, or {@code null} if the user cannot see it.
+         */
+        public AbstractFolder<?> getFolder() {
+            return folderName == null ? null : Jenkins.get().getItemByFullName(folderName, AbstractFolder.class);
+        }
+    }
+
+    /**
+     * Adds the action to every folder.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class FolderActionFactory extends TransientActionFactory<AbstractFolder> {
+
+        @Override
+        public Class<AbstractFolder> type() {
+            return AbstractFolder.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull AbstractFolder target) {
+            return Collections.singleton(new EffectivePropertiesAction(target));
+        }
+    }
+
+    /**
+     * Adds the action to every job inside a folder.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class JobActionFactory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Job target) {
+            for (ItemGroup<?> parent = target.getParent(); parent instanceof Item group; parent = group.getParent()) {
+                if (parent instanceof AbstractFolder) {
+                    return Collections.singleton(new EffectivePropertiesAction(target));
+                }
+            }
+            return Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mig82.folders.actions;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertiesTransfer;
+import com.mig82.folders.properties.StringProperty;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Item;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import jenkins.model.TransientActionFactory;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * An action which imports and exports the properties of a folder in bulk, from its page or through the REST API.
+ * Properties are imported by posting a document to {@code import} as the request body, which is also what the page
+ * does with the file picked by the user, and exported by getting {@code export}.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class FolderPropertiesAction implements Action {
+
+    private final AbstractFolder<?> folder;
+
+    public FolderPropertiesAction(AbstractFolder<?> folder) {
+        this.folder = folder;
+    }
+
+    public AbstractFolder<?> getFolder() {
+        return folder;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return folder.hasPermission(Item.EXTENDED_READ) ? "notepad.png" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.display_folder_properties_action();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "folder-properties";
+    }
+
+    public PropertiesFormat[] getFormats() {
+        return PropertiesFormat.values();
+    }
+
+    public PropertiesTransfer.Mode[] getModes() {
+        return PropertiesTransfer.Mode.values();
+    }
+
+    /**
+     * Imports the properties posted as the request body into the folder and, optionally, into all of its sub-folders.
+     */
+    @RequirePOST
+    public void doImport(
+            StaplerRequest2 req,
+            StaplerResponse2 rsp,
+            @QueryParameter String format,
+            @QueryParameter String mode,
+            @QueryParameter String subtree)
+            throws IOException {
+        int changed;
+        try {
+            PropertiesFormat propertiesFormat = parseFormat(format);
+            PropertiesTransfer.Mode importMode = mode == null || mode.isEmpty()
+                    ? PropertiesTransfer.Mode.MERGE
+                    : PropertiesTransfer.Mode.forName(mode);
+            List<StringProperty> properties;
+            try (Reader reader = new InputStreamReader(req.getInputStream(), StandardCharsets.UTF_8)) {
+                properties = propertiesFormat.read(reader);
+            }
+            changed = PropertiesTransfer.importProperties(
+                    folder, properties, importMode, "true".equals(subtree) || "on".equals(subtree));
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.getWriter().println(Messages.folder_properties_imported(changed));
+    }
+
+    /**
+     * Exports the properties of the folder, or those its jobs inherit if {@code effective} is set.
+     */
+    public void doExport(
+            StaplerRequest2 req,
+            StaplerResponse2 rsp,
+            @QueryParameter String format,
+            @QueryParameter boolean effective)
+            throws IOException {
+        PropertiesFormat propertiesFormat;
+        try {
+            propertiesFormat = parseFormat(format);
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Map<String, String> properties = PropertiesTransfer.exportProperties(folder, effective);
+        StringWriter exported = new StringWriter();
+        try {
+            propertiesFormat.write(properties, exported);
+        } catch (IllegalArgumentException e) {
+            // A key the format cannot hold, which another format can.
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        rsp.setContentType(propertiesFormat.getContentType() + ";charset=UTF-8");
+        try (Writer writer = rsp.getWriter()) {
+            writer.write(exported.toString());
+        }
+    }
+
+    private static PropertiesFormat parseFormat(String format) {
+        return format == null || format.isEmpty() ? PropertiesFormat.PROPERTIES : PropertiesFormat.forName(format);
+    }
+
+    /**
+     * Adds the action to every folder.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class TransientActionFactoryImpl extends TransientActionFactory<AbstractFolder> {
+
+        @Override
+        public Class<AbstractFolder> type() {
+            return AbstractFolder.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull AbstractFolder target) {
+            return Collections.singleton(new FolderPropertiesAction(target));
+        }
+    }
+}
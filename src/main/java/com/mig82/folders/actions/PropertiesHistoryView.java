@@ -0,0 +1,399 @@
+package com.mig82.folders.actions;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertyHistory;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Tells, from the {@link PropertyHistory} of the folders of an item, the properties its jobs got at a past point in
+ * time, and what changed in those folders over a period of time, such as between the last successful build of a job
+ * and the next one. Served under {@link EffectivePropertiesAction}, with the same permission.
+ * The properties are reconstructed from the changes to each key recorded by each folder up the chain, without reading
+ * any past configuration. A folder which recorded no change yet is known to hold its current properties since its
+ * configuration was last saved. Folders whose history does not go back that far are listed as unknown, and what they
+ * define is missing.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class PropertiesHistoryView {
+
+    private final Item item;
+
+    public PropertiesHistoryView(Item item) {
+        this.item = item;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * @return The point in time asked for by the current request, as given, if any.
+     */
+    public String getAt() {
+        String at = Stapler.getCurrentRequest2().getParameter("at");
+        return at == null || at.isBlank() ? null : at.trim();
+    }
+
+    /**
+     * @return The point in time asked for by the current request in milliseconds since the epoch, the current time if
+     *         none was, or {@code null} if it cannot be read.
+     */
+    public Long getTime() {
+        String at = getAt();
+        try {
+            return at == null ? System.currentTimeMillis() : parseTime(at);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reconstructs the properties the jobs of the item got at a point in time.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The properties, sorted by key, and the folders whose properties are unknown then.
+     */
+    public Reconstruction getPropertiesAt(long time) {
+        item.checkPermission(Item.EXTENDED_READ);
+        Map<String, Property> properties = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> unknown = new ArrayList<>();
+        ItemGroup<?> group = item instanceof AbstractFolder<?> folder ? folder : item.getParent();
+        while (group instanceof AbstractFolder<?> folder) {
+            FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+            // A folder which did not change since the history was introduced holds what it held when it was saved.
+            PropertyHistory history = folderProperties == null ? null : folderProperties.getKnownHistory();
+            if (history != null) {
+                // Permission on the item does not extend to its folders, which still shadow what the user cannot see.
+                boolean readable = folder.hasPermission(Item.READ);
+                boolean visible = readable && folder.hasPermission(Item.EXTENDED_READ);
+                Map<String, PropertyHistory.Change> defined = history.getPropertiesAt(time);
+                if (defined == null) {
+                    // Unless the folder never defined any property at all.
+                    if (readable
+                            && (!folderProperties.getHistory().isEmpty()
+                                    || folderProperties.getTable().size() > 0)) {
+                        unknown.add(folder.getFullName());
+                    }
+                } else {
+                    for (PropertyHistory.Change change : defined.values()) {
+                        if (change.getValue() == null) {
+                            continue;
+                        }
+                        properties.putIfAbsent(
+                                change.getKey(),
+                                new Property(change, readable ? folder.getFullName() : null, visible));
+                    }
+                    if (history.isSealedAt(time)) {
+                        break;
+                    }
+                }
+            }
+            group = folder.getParent();
+        }
+        return new Reconstruction(new ArrayList<>(properties.values()), unknown);
+    }
+
+    /**
+     * Lists the changes made to the folders of the item over a period of time, from the nearest folder up, leaving out
+     * the folders whose properties the user may not see.
+     *
+     * @param from The start of the period, included, in milliseconds since the epoch.
+     * @param to The end of the period, excluded.
+     * @return The changes.
+     */
+    public List<FolderChange> getChanges(long from, long to) {
+        item.checkPermission(Item.EXTENDED_READ);
+        List<FolderChange> changes = new ArrayList<>();
+        ItemGroup<?> group = item instanceof AbstractFolder<?> folder ? folder : item.getParent();
+        while (group instanceof AbstractFolder<?> folder) {
+            FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+            PropertyHistory history = folderProperties == null ? null : folderProperties.getHistory();
+            if (history != null && folder.hasPermission(Item.READ) && folder.hasPermission(Item.EXTENDED_READ)) {
+                for (PropertyHistory.Change change : history.getChanges(from, to)) {
+                    changes.add(new FolderChange(change, folder.getFullName()));
+                }
+            }
+            group = folder.getParent();
+        }
+        return changes;
+    }
+
+    /**
+     * @param from The start of the period, included, in milliseconds since the epoch.
+     * @return The changes made to the folders of the item since then.
+     */
+    public List<FolderChange> getChangesSince(long from) {
+        return getChanges(from, Long.MAX_VALUE);
+    }
+
+    /**
+     * Serves the properties the jobs of the item got at a point in time as JSON.
+     *
+     * @param at The time, in milliseconds since the epoch or in the ISO-8601 format, the local time zone of the
+     *           controller applying if it has no offset. The current time if {@code null}.
+     * @param key A key, to only return its value.
+     */
+    public void doJson(StaplerRequest2 req, StaplerResponse2 rsp, @QueryParameter String at, @QueryParameter String key)
+            throws IOException {
+        item.checkPermission(Item.EXTENDED_READ);
+        long time;
+        try {
+            time = at == null || at.isBlank() ? System.currentTimeMillis() : parseTime(at);
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Reconstruction reconstruction = getPropertiesAt(time);
+        rsp.setContentType("application/json;charset=UTF-8");
+        // Written by hand, as json-lib would turn values which look like JSON into objects.
+        try (Writer writer = rsp.getWriter()) {
+            writer.write("{\"item\":" + PropertiesFormat.jsonQuote(item.getFullName()) + ",\"at\":" + time);
+            writer.write(",\"properties\":[");
+            String separator = "";
+            for (Property property : reconstruction.getProperties()) {
+                if (key == null || key.equalsIgnoreCase(property.getKey())) {
+                    writer.write(separator);
+                    writer.write("{\"key\":" + PropertiesFormat.jsonQuote(property.getKey()));
+                    // Left out rather than made up when the user may not see them.
+                    if (property.getFolderName() != null) {
+                        writer.write(",\"folder\":" + PropertiesFormat.jsonQuote(property.getFolderName()));
+                    }
+                    if (property.isVisible()) {
+                        writer.write(",\"value\":" + PropertiesFormat.jsonQuote(property.getValue()));
+                        writer.write(",\"since\":" + property.getSince().getTime());
+                        writer.write(",\"user\":" + PropertiesFormat.jsonQuote(property.getUser()));
+                    }
+                    writer.write("}");
+                    separator = ",";
+                }
+            }
+            writer.write("],\"unknownFolders\":[");
+            writer.write(String.join(
+                    ",",
+                    reconstruction.getUnknownFolders().stream()
+                            .map(PropertiesFormat::jsonQuote)
+                            .toList()));
+            writer.write("]}");
+        }
+    }
+
+    /**
+     * Serves the changes made to the folders of the item over a period of time as JSON.
+     *
+     * @param from The start of the period, in the same formats as {@code at}, or the start of the history if
+     *             {@code null}.
+     * @param to The end of the period, or the current time if {@code null}.
+     * @param build The number of a build of the job, to list the changes made since the last successful build before
+     *              it until it started, instead of giving a period.
+     */
+    public void doChanges(
+            StaplerRequest2 req,
+            StaplerResponse2 rsp,
+            @QueryParameter String from,
+            @QueryParameter String to,
+            @QueryParameter String build)
+            throws IOException {
+        item.checkPermission(Item.EXTENDED_READ);
+        long start;
+        long end;
+        try {
+            start = from == null || from.isBlank() ? 0 : parseTime(from);
+            end = to == null || to.isBlank() ? Long.MAX_VALUE : parseTime(to);
+            if (build != null && !build.isBlank()) {
+                int number = Integer.parseInt(build.trim());
+                Run<?, ?> run = item instanceof Job<?, ?> job ? job.getBuildByNumber(number) : null;
+                if (run == null) {
+                    rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No such build: " + build);
+                    return;
+                }
+                Run<?, ?> lastSuccessful = run.getPreviousSuccessfulBuild();
+                start = lastSuccessful == null ? 0 : lastSuccessful.getStartTimeInMillis();
+                end = run.getStartTimeInMillis();
+            }
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (Writer writer = rsp.getWriter()) {
+            writer.write("{\"item\":" + PropertiesFormat.jsonQuote(item.getFullName()) + ",\"changes\":[");
+            String separator = "";
+            for (FolderChange change : getChanges(start, end)) {
+                writer.write(separator);
+                writer.write("{\"folder\":" + PropertiesFormat.jsonQuote(change.getFolderName()));
+                writer.write(",\"time\":" + change.getTime().getTime());
+                writer.write(",\"user\":" + PropertiesFormat.jsonQuote(change.getUser()));
+                writer.write(",\"type\":\"" + change.getType() + "\"");
+                if (change.getKey() != null) {
+                    writer.write(",\"key\":" + PropertiesFormat.jsonQuote(change.getKey()));
+                }
+                if (change.getValue() != null) {
+                    writer.write(",\"value\":" + PropertiesFormat.jsonQuote(change.getValue()));
+                }
+                writer.write("}");
+                separator = ",";
+            }
+            writer.write("]}");
+        }
+    }
+
+    /**
+     * Reads a point in time given as milliseconds since the epoch, or in the ISO-8601 format as an instant, a local
+     * date and time, or a local date meaning its start.
+     *
+     * @param time The point in time.
+     * @return The milliseconds since the epoch.
+     * @throws IllegalArgumentException If it is in none of those formats.
+     */
+    static long parseTime(String time) {
+        String trimmed = time.trim();
+        try {
+            if (trimmed.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(trimmed);
+            }
+            if (trimmed.endsWith("Z") || trimmed.matches(".*[+-]\\d\\d:\\d\\d$")) {
+                return Instant.parse(trimmed).toEpochMilli();
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            if (trimmed.contains("T")) {
+                return LocalDateTime.parse(trimmed).atZone(zone).toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(trimmed).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Not a point in time: " + time, e);
+        }
+    }
+
+    /**
+     * The properties the jobs of the item got at a point in time.
+     */
+    public static final class Reconstruction {
+        private final List<Property> properties;
+        private final List<String> unknownFolders;
+
+        Reconstruction(List<Property> properties, List<String> unknownFolders) {
+            this.properties = properties;
+            this.unknownFolders = unknownFolders;
+        }
+
+        public List<Property> getProperties() {
+            return properties;
+        }
+
+        /**
+         * @return The full names of the folders whose history does not go back that far.
+         */
+        public List<String> getUnknownFolders() {
+            return unknownFolders;
+        }
+    }
+
+    /**
+     * A property the jobs of the item got, the folder they got it from and when it was set.
+     * Only its key is known to a user who may not see the properties of that folder.
+     */
+    public static final class Property {
+        private final PropertyHistory.Change change;
+        private final String folderName;
+        private final boolean visible;
+
+        Property(PropertyHistory.Change change, String folderName, boolean visible) {
+            this.change = change;
+            this.folderName = folderName;
+            this.visible = visible;
+        }
+
+        public String getKey() {
+            return change.getKey();
+        }
+
+        /**
+         * @return Whether the user may see the properties of the folder defining the property.
+         */
+        public boolean isVisible() {
+            return visible;
+        }
+
+        public String getValue() {
+            return visible ? change.getValue() : null;
+        }
+
+        /**
+         * @return The full name of the folder defining the property, or {@code null} if the user may not read it.
+         */
+        public String getFolderName() {
+            return folderName;
+        }
+
+        /**
+         * @return When the property was set to the value, or when the history of the folder started.
+         */
+        public Date getSince() {
+            return visible ? new Date(change.getTime()) : null;
+        }
+
+        public String getUser() {
+            return visible ? change.getUser() : null;
+        }
+    }
+
+    /**
+     * A change made to a folder up the chain.
+     */
+    public static final class FolderChange {
+        private final PropertyHistory.Change change;
+        private final String folderName;
+
+        FolderChange(PropertyHistory.Change change, String folderName) {
+            this.change = change;
+            this.folderName = folderName;
+        }
+
+        public String getFolderName() {
+            return folderName;
+        }
+
+        public Date getTime() {
+            return new Date(change.getTime());
+        }
+
+        public String getUser() {
+            return change.getUser();
+        }
+
+        public PropertyHistory.Type getType() {
+            return change.getType();
+        }
+
+        public String getKey() {
+            return change.getKey();
+        }
+
+        public String getValue() {
+            return change.getValue();
+        }
+    }
+}
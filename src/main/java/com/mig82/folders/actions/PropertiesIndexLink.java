@@ -0,0 +1,162 @@
+package com.mig82.folders.actions;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesIndex;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.List;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
+
+/**
+ * A page under Manage Jenkins to search the {@link PropertiesIndex} for the folders defining a key and, given a job,
+ * which of them it inherits the key from. The same is available as JSON from {@code query}.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+public class PropertiesIndexLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-search";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.display_properties_index();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.properties_index_description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "folder-properties-index";
+    }
+
+    @NonNull
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.SYSTEM_READ;
+    }
+
+    @NonNull
+    @Override
+    public Category getCategory() {
+        return Category.TOOLS;
+    }
+
+    /**
+     * @return The key searched for by the current request, if any.
+     */
+    public String getKey() {
+        return trimToNull(Stapler.getCurrentRequest2().getParameter("key"));
+    }
+
+    /**
+     * @return The full name of the job searched for by the current request, if any.
+     */
+    public String getJobName() {
+        return trimToNull(Stapler.getCurrentRequest2().getParameter("job"));
+    }
+
+    /**
+     * @return The job searched for by the current request, or {@code null} if none was or the user may not read it.
+     */
+    public Job<?, ?> getJob() {
+        String jobName = getJobName();
+        return jobName == null ? null : Jenkins.get().getItemByFullName(jobName, Job.class);
+    }
+
+    /**
+     * @return The definitions of the key searched for, either all of them or those the job searched for inherits.
+     */
+    public List<PropertiesIndex.Definition> getDefinitions() {
+        String key = getKey();
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        Job<?, ?> job = getJob();
+        return job == null ? PropertiesIndex.getDefinitions(key) : PropertiesIndex.getDefinitions(job, key);
+    }
+
+    public List<Job<?, ?>> getInheritingJobs(AbstractFolder<?> folder) {
+        String key = getKey();
+        return key == null ? Collections.emptyList() : PropertiesIndex.getInheritingJobs(folder, key);
+    }
+
+    /**
+     * Finds the folders defining a key, or those a job inherits it from, as JSON.
+     *
+     * @param key The key to look for, ignoring case.
+     * @param job The full name of a job, to only list the definitions it may inherit, the nearest of which wins.
+     * @param jobs Whether to list the jobs which inherit each definition.
+     */
+    public HttpResponse doQuery(@QueryParameter String key, @QueryParameter String job, @QueryParameter boolean jobs) {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+        key = trimToNull(key);
+        job = trimToNull(job);
+        if (key == null) {
+            return HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST, "Missing key");
+        }
+        List<PropertiesIndex.Definition> definitions;
+        if (job == null) {
+            definitions = PropertiesIndex.getDefinitions(key);
+        } else {
+            Job<?, ?> resolved = Jenkins.get().getItemByFullName(job, Job.class);
+            if (resolved == null) {
+                return HttpResponses.errorWithoutStack(HttpServletResponse.SC_NOT_FOUND, "No such job: " + job);
+            }
+            definitions = PropertiesIndex.getDefinitions(resolved, key);
+        }
+        JSONArray array = new JSONArray();
+        for (PropertiesIndex.Definition definition : definitions) {
+            JSONObject json = new JSONObject();
+            json.put("folder", definition.getFolder().getFullName());
+            // Leave the value out rather than returning null, which json-lib would turn into an empty object.
+            if (definition.getValue() != null) {
+                json.put("value", definition.getValue());
+            }
+            if (definition.getShadowed() != null) {
+                json.put("shadows", definition.getShadowed().getFullName());
+            }
+            if (job != null) {
+                // The nearest definition may be one the user cannot read, in which case none of those listed wins.
+                json.put("wins", definition.isWinning());
+            }
+            if (jobs) {
+                JSONArray inheriting = new JSONArray();
+                for (Job<?, ?> inheritingJob : PropertiesIndex.getInheritingJobs(definition.getFolder(), key)) {
+                    inheriting.add(inheritingJob.getFullName());
+                }
+                json.put("jobs", inheriting);
+            }
+            array.add(json);
+        }
+        JSONObject result = new JSONObject();
+        result.put("key", key);
+        if (job != null) {
+            result.put("job", job);
+        }
+        result.put("definitions", array);
+        return HttpResponses.okJSON(result);
+    }
+
+    private static String trimToNull(String s) {
+        return s == null || s.trim().isEmpty() ? null : s.trim();
+    }
+}
@@ -0,0 +1,43 @@
+package com.mig82.folders.cli;
+
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertiesTransfer;
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Writes the properties of a folder to the standard output.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+public class ExportFolderPropertiesCommand extends CLICommand {
+
+    @Argument(metaVar = "FOLDER", usage = "Full name of the folder", required = true)
+    public String folder;
+
+    @Option(name = "--format", usage = "PROPERTIES, DOTENV, YAML or JSON")
+    public String format = PropertiesFormat.PROPERTIES.name();
+
+    @Option(name = "--effective", usage = "Export the properties inherited by the jobs in the folder")
+    public boolean effective;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.cli_export_folder_properties();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        PropertiesFormat propertiesFormat = PropertiesFormat.forName(format);
+        Writer writer = new OutputStreamWriter(stdout, getClientCharset());
+        propertiesFormat.write(PropertiesTransfer.exportProperties(FolderResolver.resolve(folder), effective), writer);
+        writer.flush();
+        return 0;
+    }
+}
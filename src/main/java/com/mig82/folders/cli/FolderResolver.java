@@ -0,0 +1,20 @@
+package com.mig82.folders.cli;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import jenkins.model.Jenkins;
+
+/**
+ * Finds the folder named by a CLI argument.
+ */
+final class FolderResolver {
+
+    private FolderResolver() {}
+
+    static AbstractFolder<?> resolve(String fullName) {
+        AbstractFolder<?> folder = Jenkins.get().getItemByFullName(fullName, AbstractFolder.class);
+        if (folder == null) {
+            throw new IllegalArgumentException("No such folder: " + fullName);
+        }
+        return folder;
+    }
+}
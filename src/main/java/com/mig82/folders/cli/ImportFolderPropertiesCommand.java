@@ -0,0 +1,53 @@
+package com.mig82.folders.cli;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertiesTransfer;
+import com.mig82.folders.properties.StringProperty;
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Imports the properties read from the standard input into a folder and, optionally, into all of its sub-folders.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+public class ImportFolderPropertiesCommand extends CLICommand {
+
+    @Argument(metaVar = "FOLDER", usage = "Full name of the folder", required = true)
+    public String folder;
+
+    @Option(name = "--format", usage = "PROPERTIES, DOTENV, YAML or JSON")
+    public String format = PropertiesFormat.PROPERTIES.name();
+
+    @Option(name = "--mode", usage = "MERGE, REPLACE or REMOVE")
+    public String mode = PropertiesTransfer.Mode.MERGE.name();
+
+    @Option(name = "--subtree", usage = "Also apply the properties to every sub-folder which already defines them")
+    public boolean subtree;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.cli_import_folder_properties();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        AbstractFolder<?> target = FolderResolver.resolve(folder);
+        List<StringProperty> properties;
+        try (Reader reader = new InputStreamReader(stdin, getClientCharset())) {
+            properties = PropertiesFormat.forName(format).read(reader);
+        }
+        int changed =
+                PropertiesTransfer.importProperties(target, properties, PropertiesTransfer.Mode.forName(mode), subtree);
+        stdout.println(Messages.folder_properties_imported(changed));
+        return 0;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mig82.folders.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import jenkins.metrics.api.MetricProvider;
+
+/**
+ * Publishes the {@link ResolutionMetrics} to the Metrics plugin, when it is installed.
+ * Times are in microseconds.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension(optional = true)
+public class FolderPropertiesMetricProvider extends MetricProvider {
+
+    private static final String PREFIX = "folder-properties.";
+    private static final long MICROS = 1000;
+
+    @NonNull
+    @Override
+    public MetricSet getMetricSet() {
+        Map<String, Metric> metrics = new LinkedHashMap<>();
+        addHistogram(metrics, "resolution.micros", ResolutionMetrics.RESOLUTION, MICROS);
+        addHistogram(metrics, "wrapper.setUp.micros", ResolutionMetrics.WRAPPER_SET_UP, MICROS);
+        addHistogram(metrics, "step.run.micros", ResolutionMetrics.STEP_RUN, MICROS);
+        addHistogram(metrics, "depth", ResolutionMetrics.DEPTH, 1);
+        metrics.put(PREFIX + "properties.merged", (Gauge<Long>) ResolutionMetrics::getPropertiesMerged);
+        metrics.put(PREFIX + "properties.shadowed", (Gauge<Long>) ResolutionMetrics::getPropertiesShadowed);
+        metrics.put(PREFIX + "cache.hits", (Gauge<Long>) ResolutionMetrics::getCacheHits);
+        metrics.put(PREFIX + "cache.misses", (Gauge<Long>) ResolutionMetrics::getCacheMisses);
+        return () -> metrics;
+    }
+
+    private static void addHistogram(Map<String, Metric> metrics, String name, Histogram histogram, long scale) {
+        addGauge(metrics, name + ".count", histogram, h -> h.getCount());
+        addGauge(metrics, name + ".p50", histogram, h -> h.getPercentile(0.5) / scale);
+        addGauge(metrics, name + ".p99", histogram, h -> h.getPercentile(0.99) / scale);
+        addGauge(metrics, name + ".max", histogram, h -> h.getMax() / scale);
+    }
+
+    private static void addGauge(
+            Map<String, Metric> metrics, String name, Histogram histogram, ToLongFunction<Histogram> value) {
+        metrics.put(PREFIX + name, (Gauge<Long>) () -> value.applyAsLong(histogram));
+    }
+}
@@ -0,0 +1,86 @@
+package com.mig82.folders.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import net.sf.json.JSONObject;
+
+/**
+ * A lock-free histogram of non-negative values, with one bucket per power of two.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they are accurate within a factor of two,
+ * which is enough to tell where latency comes from at a fixed and tiny recording cost.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Estimates a percentile.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @return The upper bound of the bucket the percentile falls in, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * n);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                long upperBound = bucket == 0 ? 0 : bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+                return Math.min(upperBound, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @param scale The divisor to apply to every value, e.g. to turn nanoseconds into microseconds.
+     * @return A summary of the histogram.
+     */
+    public JSONObject toJSON(long scale) {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("mean", getMean() / scale);
+        json.put("p50", getPercentile(0.5) / scale);
+        json.put("p90", getPercentile(0.9) / scale);
+        json.put("p99", getPercentile(0.99) / scale);
+        json.put("max", getMax() / scale);
+        return json;
+    }
+}
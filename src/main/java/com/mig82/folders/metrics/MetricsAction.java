@@ -0,0 +1,37 @@
+package com.mig82.folders.metrics;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+
+/**
+ * Serves the {@link ResolutionMetrics} as JSON from {@code /folder-properties-metrics/}, to users who may read the
+ * configuration of the system. It is not shown in the side panel.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+public class MetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "folder-properties-metrics";
+    }
+
+    public HttpResponse doIndex() {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+        return HttpResponses.okJSON(ResolutionMetrics.toJSON());
+    }
+}
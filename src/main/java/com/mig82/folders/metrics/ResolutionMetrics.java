@@ -0,0 +1,158 @@
+package com.mig82.folders.metrics;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONObject;
+
+/**
+ * Metrics about the resolution of folder properties, exposed by the {@link MetricsAction} and, if the Metrics plugin
+ * is installed, by the {@link FolderPropertiesMetricProvider}.
+ * Recording can be turned off with the {@code com.mig82.folders.metrics.ResolutionMetrics.enabled} system property,
+ * in which case every call made on the hot path returns after reading a single field.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class ResolutionMetrics {
+
+    /**
+     * Whether metrics are recorded. Not final so it can be changed from the script console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static boolean ENABLED = SystemProperties.getBoolean(ResolutionMetrics.class.getName() + ".enabled", true);
+
+    /**
+     * Nanoseconds spent resolving the properties of a job.
+     */
+    public static final Histogram RESOLUTION = new Histogram();
+
+    /**
+     * Nanoseconds spent by {@code ParentFolderBuildWrapper.setUp}.
+     */
+    public static final Histogram WRAPPER_SET_UP = new Histogram();
+
+    /**
+     * Nanoseconds spent by {@code withFolderProperties} before starting its body.
+     */
+    public static final Histogram STEP_RUN = new Histogram();
+
+    /**
+     * Ancestor folders walked per resolution, which is 0 when the parent folder was already cached.
+     */
+    public static final Histogram DEPTH = new Histogram();
+
+    private static final LongAdder PROPERTIES_MERGED = new LongAdder();
+    private static final LongAdder PROPERTIES_SHADOWED = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    private ResolutionMetrics() {}
+
+    /**
+     * @return The time to pass to {@link #stop}, or 0 if metrics are disabled.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since {@link #start} was called.
+     */
+    public static void stop(Histogram histogram, long start) {
+        if (start != 0) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return A new walk to count what a resolution does, or {@code null} if metrics are disabled.
+     */
+    public static Walk walk() {
+        return ENABLED ? new Walk() : null;
+    }
+
+    /**
+     * Records a resolution of the properties of a job. It is a cache hit if the cache returned the layer of the
+     * nearest folder, a miss if any folder had to be walked, and neither if the job is not inside any folder.
+     */
+    public static void stop(Walk walk, long start) {
+        if (walk != null) {
+            stop(RESOLUTION, start);
+            DEPTH.record(walk.folders);
+            PROPERTIES_MERGED.add(walk.merged);
+            PROPERTIES_SHADOWED.add(walk.shadowed);
+            if (walk.folders > 0) {
+                CACHE_MISSES.increment();
+            } else if (walk.cached) {
+                CACHE_HITS.increment();
+            }
+        }
+    }
+
+    public static JSONObject toJSON() {
+        long micros = TimeUnit.MICROSECONDS.toNanos(1);
+        long hits = CACHE_HITS.sum();
+        long misses = CACHE_MISSES.sum();
+        JSONObject json = new JSONObject();
+        json.put("enabled", ENABLED);
+        json.put("resolutionMicros", RESOLUTION.toJSON(micros));
+        json.put("wrapperSetUpMicros", WRAPPER_SET_UP.toJSON(micros));
+        json.put("stepRunMicros", STEP_RUN.toJSON(micros));
+        json.put("depth", DEPTH.toJSON(1));
+        json.put("propertiesMerged", PROPERTIES_MERGED.sum());
+        json.put("propertiesShadowed", PROPERTIES_SHADOWED.sum());
+        json.put("cacheHits", hits);
+        json.put("cacheMisses", misses);
+        json.put("cacheHitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        return json;
+    }
+
+    public static long getPropertiesMerged() {
+        return PROPERTIES_MERGED.sum();
+    }
+
+    public static long getPropertiesShadowed() {
+        return PROPERTIES_SHADOWED.sum();
+    }
+
+    public static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    public static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    /**
+     * Counts the folders a single resolution had to walk because they were not cached, and what it merged.
+     */
+    public static final class Walk {
+        private int folders;
+        private int merged;
+        private int shadowed;
+        private boolean cached;
+
+        private Walk() {}
+
+        /**
+         * Counts a folder which was not cached.
+         *
+         * @param merged The keys it defines which none of its ancestors define.
+         * @param shadowed The definitions jobs do not get because another definition of the same key wins: those of
+         *                 its ancestors for keys it defines too, and its own which repeat a key it already defines.
+         */
+        public void folder(int merged, int shadowed) {
+            this.folders++;
+            this.merged += merged;
+            this.shadowed += shadowed;
+        }
+
+        /**
+         * Records that the cache returned the layer of a folder, so that its ancestors were not walked.
+         */
+        public void cached() {
+            this.cached = true;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.mig82.folders.properties;
+
+import hudson.EnvVars;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A precomputed plan to expand a set of properties into an environment.
+ * Applying it is equivalent to calling {@link EnvVars#overrideExpandingAll(Map)}, but the values are parsed and
+ * the references between them are sorted only once, when the plan is compiled. Applying the plan then only looks up
+ * the variables each value refers to, in an order where every property comes after those it refers to.
+ * Sets of properties which refer to each other in a cycle are detected when compiling and fall back to
+ * {@link EnvVars#overrideExpandingAll(Map)}, which knows how to cut a cycle depending on the target environment.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class ExpansionPlan {
+
+    private static final Logger LOGGER = Logger.getLogger(ExpansionPlan.class.getName());
+
+    /**
+     * The same pattern as the one {@link hudson.Util#replaceMacro(String, java.util.Map)} uses.
+     */
+    private static final Pattern VARIABLE = Pattern.compile("\\$([A-Za-z0-9_]+|\\{[A-Za-z0-9_.]+\\}|\\$)");
+
+    private final Map<String, String> overrides;
+    private final String[] keys;
+    private final Template[] templates;
+    private final List<String> cycle;
+
+    private ExpansionPlan(Map<String, String> overrides, String[] keys, Template[] templates, List<String> cycle) {
+        this.overrides = overrides;
+        this.keys = keys;
+        this.templates = templates;
+        this.cycle = cycle;
+    }
+
+    /**
+     * Compiles the plan to expand a set of properties.
+     *
+     * @param overrides The properties to expand, which should not be modified afterwards.
+     * @return The plan to expand them.
+     */
+    public static ExpansionPlan compile(Map<String, String> overrides) {
+        Map<String, Template> templates = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> extending = new ArrayList<>();
+        for (Map.Entry<String, String> entry : overrides.entrySet()) {
+            if (entry.getKey().indexOf('+') > 0) {
+                // Just like EnvVars does, XYZ+AAA variables are always applied last.
+                extending.add(entry.getKey());
+            } else {
+                templates.put(entry.getKey(), Template.compile(entry.getValue()));
+            }
+        }
+
+        Sorter sorter = new Sorter(templates);
+        for (String key : templates.keySet()) {
+            if (sorter.cycle == null) {
+                sorter.visit(key);
+            }
+        }
+        if (sorter.cycle != null) {
+            String description = String.join(" -> ", sorter.cycle);
+            LOGGER.log(Level.WARNING, "Cyclic reference between folder properties: {0}", description);
+            return new ExpansionPlan(overrides, null, null, Collections.unmodifiableList(sorter.cycle));
+        }
+
+        List<String> ordered = sorter.sorted;
+        ordered.addAll(extending);
+        String[] keys = ordered.toArray(new String[0]);
+        Template[] compiled = new Template[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Template template = templates.get(keys[i]);
+            compiled[i] = template != null ? template : Template.compile(overrides.get(keys[i]));
+        }
+        return new ExpansionPlan(overrides, keys, compiled, null);
+    }
+
+    /**
+     * Expands the properties into an environment, overriding any variables of the same name.
+     *
+     * @param env The environment to expand the properties into.
+     */
+    public void apply(EnvVars env) {
+        if (cycle != null) {
+            env.overrideExpandingAll(overrides);
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            env.override(keys[i], templates[i].expand(env));
+        }
+    }
+
+    /**
+     * Returns the variables which refer to each other in a cycle, if any.
+     *
+     * @return The names of the variables in the cycle, starting and ending with the same one, or {@code null}.
+     */
+    public List<String> getCycle() {
+        return cycle;
+    }
+
+    /**
+     * A value split into the literal text between variable references and the references themselves.
+     */
+    private static final class Template {
+        private final String constant;
+        private final String[] literals;
+        private final String[] names;
+        private final String[] references;
+
+        private Template(String constant, String[] literals, String[] names, String[] references) {
+            this.constant = constant;
+            this.literals = literals;
+            this.names = names;
+            this.references = references;
+        }
+
+        static Template compile(String value) {
+            if (value == null || value.indexOf('$') < 0) {
+                return new Template(value, null, null, null);
+            }
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<String> references = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            Matcher m = VARIABLE.matcher(value);
+            int last = 0;
+            while (m.find()) {
+                literal.append(value, last, m.start());
+                String name = m.group(1);
+                if (name.equals("$")) {
+                    // Escaped dollar sign.
+                    literal.append('$');
+                } else {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    names.add(name.charAt(0) == '{' ? name.substring(1, name.length() - 1) : name);
+                    references.add(m.group());
+                }
+                last = m.end();
+            }
+            literal.append(value, last, value.length());
+            if (names.isEmpty()) {
+                return new Template(literal.toString(), null, null, null);
+            }
+            literals.add(literal.toString());
+            return new Template(
+                    null,
+                    literals.toArray(new String[0]),
+                    names.toArray(new String[0]),
+                    references.toArray(new String[0]));
+        }
+
+        String expand(Map<String, String> env) {
+            if (names == null) {
+                return constant;
+            }
+            StringBuilder expanded = new StringBuilder(literals[0]);
+            for (int i = 0; i < names.length; i++) {
+                String resolved = env.get(names[i]);
+                // Unresolved references are left as they are.
+                expanded.append(resolved != null ? resolved : references[i]).append(literals[i + 1]);
+            }
+            return expanded.toString();
+        }
+    }
+
+    /**
+     * Sorts the variables so that every variable comes after those it refers to, stopping at the first cycle.
+     * The references are followed depth first with an explicit stack rather than by recursion, so that a long chain
+     * of properties referring to each other cannot overflow the stack of the thread.
+     */
+    private static final class Sorter {
+        private final Map<String, Template> templates;
+        private final Set<String> visited = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private final Set<String> onPath = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private final Deque<Frame> path = new ArrayDeque<>();
+        private final List<String> sorted = new ArrayList<>();
+        private List<String> cycle;
+
+        Sorter(Map<String, Template> templates) {
+            this.templates = templates;
+        }
+
+        /**
+         * A variable on the current path, and the next of its references to follow.
+         */
+        private static final class Frame {
+            private final String key;
+            private final String[] names;
+            private int next;
+
+            Frame(String key, String[] names) {
+                this.key = key;
+                this.names = names;
+            }
+        }
+
+        void visit(String key) {
+            if (cycle != null || visited.contains(key)) {
+                return;
+            }
+            push(key);
+            while (!path.isEmpty()) {
+                Frame frame = path.peek();
+                if (frame.names != null && frame.next < frame.names.length) {
+                    String name = frame.names[frame.next++];
+                    // Self references and references to the build environment do not need ordering.
+                    if (name.equalsIgnoreCase(frame.key) || !templates.containsKey(name) || visited.contains(name)) {
+                        continue;
+                    }
+                    if (onPath.contains(name)) {
+                        cycle = new ArrayList<>();
+                        boolean inCycle = false;
+                        for (Iterator<Frame> it = path.descendingIterator(); it.hasNext(); ) {
+                            String step = it.next().key;
+                            inCycle |= step.equalsIgnoreCase(name);
+                            if (inCycle) {
+                                cycle.add(step);
+                            }
+                        }
+                        cycle.add(name);
+                        path.clear();
+                        onPath.clear();
+                        return;
+                    }
+                    push(name);
+                } else {
+                    path.pop();
+                    onPath.remove(frame.key);
+                    visited.add(frame.key);
+                    sorted.add(frame.key);
+                }
+            }
+        }
+
+        private void push(String key) {
+            path.push(new Frame(key, templates.get(key).names));
+            onPath.add(key);
+        }
+    }
+}
@@ -5,15 +5,36 @@ import com.cloudbees.hudson.plugins.folder.AbstractFolderProperty;
 import com.cloudbees.hudson.plugins.folder.AbstractFolderPropertyDescriptor;
 import com.mig82.folders.Messages;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Descriptor;
-import hudson.util.CopyOnWriteList;
+import hudson.model.Item;
+import hudson.security.ACL;
+import hudson.util.FormValidation;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.ArrayUtils;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest2;
 
 /**
@@ -26,9 +47,64 @@ public class FolderProperties<C extends AbstractFolder<?>> extends AbstractFolde
     private static final Logger LOGGER = Logger.getLogger(FolderProperties.class.getName());
 
     /**
-     * The list properties held by the project folder.
+     * The number of properties from which the configuration page only offers to edit them as text, as rendering a row
+     * per property gets slow. Not final so it can be changed from the script console.
      */
-    private final CopyOnWriteList<StringProperty> properties = new CopyOnWriteList<StringProperty>();
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static int TEXT_EDITOR_THRESHOLD =
+            SystemProperties.getInteger(FolderProperties.class.getName() + ".textEditorThreshold", 100);
+
+    /**
+     * The list properties held by the project folder, replaced as a whole whenever they change.
+     * Each table is an immutable snapshot, so readers get either the previous properties or the new ones, and tables
+     * are published in order of generation.
+     */
+    private volatile PropertyTable properties = PropertyTable.EMPTY;
+
+    /**
+     * The path of a file under {@code $JENKINS_HOME/folder-properties} holding more properties, if any.
+     */
+    private volatile String file;
+
+    /**
+     * The ids of the {@link PropertySets shared sets} whose properties the folder defines too, separated by commas,
+     * if any.
+     */
+    private volatile String sets;
+
+    /**
+     * Whether the items of the folder only inherit the properties of the folder and of its sub-folders, and none of
+     * those of its ancestors.
+     */
+    private volatile boolean sealed;
+
+    /**
+     * Whether the properties are added to the environment of every build below the folder, without the jobs having
+     * to ask for them.
+     */
+    private volatile boolean inject;
+
+    /**
+     * The properties the folder defines: those in {@link #properties}, followed by those read from {@link #file}, then
+     * those of the {@link #sets}, so that each of them shadows those after it. Combined on first use, then whenever
+     * any of them changes.
+     */
+    private transient volatile PropertyTable table;
+
+    /**
+     * The properties last read from {@link #file}, to tell whether it changed.
+     */
+    private transient PropertyTable fileTable;
+
+    /**
+     * The tables of the {@link #sets} last combined, to tell whether any of them changed.
+     */
+    private transient PropertyTable[] setTables;
+
+    /**
+     * The changes made to the properties of the folder, read from its log on first use.
+     */
+    private transient volatile PropertyHistory history;
 
     /**
      * Constructor.
@@ -45,17 +121,223 @@ public class FolderProperties<C extends AbstractFolder<?>> extends AbstractFolde
             return null;
         }
 
-        properties.replaceBy(request.bindJSONToList(StringProperty.class, formData.get("properties")));
+        List<StringProperty> properties;
+        // Large folders are always edited as text, smaller ones when the rows are swapped for the text editor.
+        if (formData.has("text") && formData.optBoolean("textEditor", true)) {
+            try {
+                properties = parseText(formData.getString("text"));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new Descriptor.FormException(Messages.folder_properties_text_invalid(e.getMessage()), "text");
+            }
+            String problem = DescriptorImpl.checkKeys(properties);
+            if (problem != null) {
+                throw new Descriptor.FormException(problem, "text");
+            }
+        } else {
+            properties = request.bindJSONToList(StringProperty.class, formData.get("properties"));
+        }
+        setSealed(formData.optBoolean("sealed"));
+        setInject(formData.optBoolean("inject"));
+        publish(
+                PropertyTable.of(properties),
+                Util.fixEmptyAndTrim(formData.optString("file")),
+                normalizeSets(formData.optString("sets")));
         return this;
     }
 
+    /**
+     * @return Whether the configuration page only offers to edit the properties as text.
+     */
+    public boolean isTextEditor() {
+        return properties.size() >= TEXT_EDITOR_THRESHOLD;
+    }
+
+    /**
+     * Returns the properties added to the project folder in the {@code .properties} format, to edit them as text.
+     *
+     * @return One line per property, in the order they were added.
+     */
+    public String getText() {
+        return toText(properties);
+    }
+
+    /**
+     * Writes properties in the {@code .properties} format, leaving out those without a key and writing missing values
+     * as empty ones.
+     */
+    static String toText(PropertyTable table) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < table.size(); i++) {
+            String key = table.getKey(i);
+            if (key == null) {
+                continue;
+            }
+            String value = table.getValue(i);
+            text.append(PropertiesFormat.escapeProperty(key, true))
+                    .append('=')
+                    .append(PropertiesFormat.escapeProperty(value == null ? "" : value, false))
+                    .append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads properties edited as text, keeping those with blank or duplicate keys so that they can be reported.
+     */
+    static List<StringProperty> parseText(String text) throws IOException {
+        return PropertiesFormat.PROPERTIES.read(new StringReader(text));
+    }
+
     /**
      * Returns the properties added to the project folder.
      *
      * @return The array of properties added to the folder.
      */
     public StringProperty[] getProperties() {
-        return properties.toArray(new StringProperty[0]);
+        return properties.toProperties();
+    }
+
+    /**
+     * Returns the properties the project folder defines without copying them, including those read from its file.
+     *
+     * @return The indexed table of properties added to the folder, followed by those read from its file and those of
+     *         the shared sets it references.
+     */
+    public PropertyTable getTable() {
+        PropertyTable table = this.table;
+        return table != null ? table : combine();
+    }
+
+    /**
+     * @return The indexed table of properties added to the folder, leaving out those read from its file or shared.
+     */
+    PropertyTable getInlineTable() {
+        return properties;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Stops the inheritance of properties at this folder, so that its items get none of the properties of its
+     * ancestors, which are not even looked at.
+     *
+     * @param sealed Whether the folder is sealed.
+     */
+    @DataBoundSetter
+    public synchronized void setSealed(boolean sealed) {
+        if (sealed != this.sealed) {
+            PropertyHistory history = getHistory();
+            if (history != null) {
+                record(history, List.of(PropertyHistory.seal(sealed, history.now(), getUser())));
+            }
+            update(() -> this.sealed = sealed);
+        }
+    }
+
+    public boolean isInject() {
+        return inject;
+    }
+
+    /**
+     * Adds the properties the jobs below this folder inherit to the environment of all their builds, as the build
+     * wrapper or {@code withFolderProperties} would, without overriding the variables the builds already define.
+     *
+     * @param inject Whether the properties are added to every build.
+     */
+    @DataBoundSetter
+    public synchronized void setInject(boolean inject) {
+        if (inject != this.inject) {
+            update(() -> this.inject = inject);
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Reads more properties from a file, which those added to the folder shadow.
+     *
+     * @param file The path of the file, relative to {@code $JENKINS_HOME/folder-properties}, or {@code null}.
+     */
+    @DataBoundSetter
+    public void setFile(String file) {
+        publish(properties, Util.fixEmptyAndTrim(file), sets);
+    }
+
+    public String getSets() {
+        return sets;
+    }
+
+    /**
+     * Defines the properties of some shared sets too, which those added to the folder or read from its file shadow.
+     *
+     * @param sets The ids of the sets, separated by commas or spaces, the first ones shadowing the others, or
+     *             {@code null}.
+     */
+    @DataBoundSetter
+    public void setSets(String sets) {
+        publish(properties, file, normalizeSets(sets));
+    }
+
+    private static String normalizeSets(String sets) {
+        List<String> ids = PropertySets.parseIds(sets);
+        return ids.isEmpty() ? null : String.join(", ", ids);
+    }
+
+    /**
+     * Publishes the properties read from the file and those of the shared sets again, if they changed since they
+     * were last published.
+     */
+    void reload() {
+        publish(properties, file, sets);
+    }
+
+    /**
+     * @return The absolute path of the file this folder reads properties from, or {@code null} if it reads none.
+     */
+    Path getFilePath() {
+        String file = this.file;
+        if (file == null) {
+            return null;
+        }
+        try {
+            return PropertiesFileSource.resolve(file);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param ids The ids of some shared sets.
+     * @return Whether this folder references one of them.
+     */
+    boolean usesSets(Set<String> ids) {
+        for (String id : PropertySets.parseIds(sets)) {
+            if (ids.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized PropertyTable combine() {
+        if (table == null) {
+            fileTable = file == null ? PropertyTable.EMPTY : PropertiesFileSource.get(file);
+            setTables = PropertySets.getTables(sets);
+            table = concat(properties, fileTable, setTables);
+        }
+        return table;
+    }
+
+    private static PropertyTable concat(PropertyTable inline, PropertyTable fromFile, PropertyTable[] fromSets) {
+        PropertyTable combined = inline.concat(fromFile);
+        for (PropertyTable set : fromSets) {
+            combined = combined.concat(set);
+        }
+        return combined;
     }
 
     /**
@@ -66,9 +348,169 @@ public class FolderProperties<C extends AbstractFolder<?>> extends AbstractFolde
      */
     @DataBoundSetter
     public void setProperties(StringProperty[] properties) {
-        LOGGER.log(Level.FINER, "FolderProperties.setProperties({0})\n", ArrayUtils.toString(properties));
-        for (StringProperty property : properties) {
-            this.properties.add(property);
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.log(Level.FINER, "FolderProperties.setProperties({0})\n", ArrayUtils.toString(properties));
+        }
+        boolean published;
+        // Appended to the current properties, which no other change may replace meanwhile.
+        synchronized (this) {
+            published = swap(this.properties.append(Arrays.asList(properties)), file, sets);
+        }
+        if (published) {
+            index();
+        }
+    }
+
+    /**
+     * Replaces all the properties of the project folder at once, without saving it.
+     *
+     * @param table The new properties.
+     */
+    void replaceTable(PropertyTable table) {
+        publish(table, file, sets);
+    }
+
+    /**
+     * Publishes a new snapshot of the properties, with a newer generation than the one it replaces.
+     */
+    private void publish(PropertyTable inline, String file, String sets) {
+        if (swap(inline, file, sets)) {
+            index();
+        }
+    }
+
+    /**
+     * Swaps in a new snapshot of the properties, unless nothing changed.
+     *
+     * @return Whether a new snapshot was published.
+     */
+    private synchronized boolean swap(PropertyTable inline, String file, String sets) {
+        PropertyTable fromFile = file == null ? PropertyTable.EMPTY : PropertiesFileSource.get(file);
+        PropertyTable[] fromSets = PropertySets.getTables(sets);
+        if (inline == this.properties
+                && Objects.equals(file, this.file)
+                && Objects.equals(sets, this.sets)
+                && fromFile == this.fileTable
+                && Arrays.equals(fromSets, this.setTables)) {
+            return false;
+        }
+        PropertyTable previous = getTable();
+        PropertyTable combined = concat(inline, fromFile, fromSets);
+        if (combined.getGeneration() <= previous.getGeneration()) {
+            // The table was created before the current one, e.g. it is the shared empty table.
+            combined = combined.restamp();
+        }
+        // What the folder defines is recorded, whether it was added to it, read from its file or shared.
+        PropertyHistory history = combined.contentEquals(previous) ? null : getHistory();
+        if (history != null) {
+            record(history, PropertyHistory.diff(previous, combined, history.now(), getUser()));
+        }
+        // Without properties from a file or a shared set, the combined table is the one persisted.
+        PropertyTable persisted = combined.size() == inline.size() ? combined : inline;
+        PropertyTable published = combined;
+        update(() -> {
+            this.properties = persisted;
+            this.file = file;
+            this.sets = sets;
+            this.fileTable = fromFile;
+            this.setTables = fromSets;
+            this.table = published;
+        });
+        return true;
+    }
+
+    /**
+     * Returns the changes made to the properties of the folder since they started being recorded.
+     *
+     * @return The history, or {@code null} if this property has no owner yet.
+     */
+    public PropertyHistory getHistory() {
+        PropertyHistory history = this.history;
+        return history != null ? history : loadHistory();
+    }
+
+    private synchronized PropertyHistory loadHistory() {
+        if (history == null && owner != null) {
+            history = PropertyHistory.load(new File(owner.getRootDir(), PropertyHistory.FILE_NAME));
+        }
+        return history;
+    }
+
+    /**
+     * Returns the changes made to the properties of the folder or, if none was recorded yet, what the folder holds
+     * now, which it held at least since its configuration was last saved.
+     *
+     * @return The history, or {@code null} if this property has no owner yet.
+     */
+    public synchronized PropertyHistory getKnownHistory() {
+        PropertyHistory history = getHistory();
+        if (history == null || !history.isEmpty()) {
+            return history;
+        }
+        return PropertyHistory.of(baseline(System.currentTimeMillis()));
+    }
+
+    /**
+     * Appends changes to the history of the folder, before they are made. The first changes recorded are preceded by
+     * what the folder held until then.
+     */
+    private void record(PropertyHistory history, List<PropertyHistory.Change> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (history.isEmpty()) {
+            List<PropertyHistory.Change> all = baseline(changes.get(0).getTime());
+            all.addAll(changes);
+            changes = all;
+        }
+        // Written to the current directory of the folder, which moves along with it.
+        history.append(new File(owner.getRootDir(), PropertyHistory.FILE_NAME), changes);
+    }
+
+    /**
+     * Lists what the folder holds, including whether it is sealed, which it held at least since its configuration was
+     * last saved. The seal also marks the start of the history of a folder which holds no property.
+     *
+     * @param time The time of the first change which is not part of it.
+     */
+    private List<PropertyHistory.Change> baseline(long time) {
+        long saved = owner.getConfigFile().getFile().lastModified();
+        long since = saved > 0 && saved < time ? saved : time;
+        List<PropertyHistory.Change> changes = PropertyHistory.diff(null, getTable(), since, ACL.SYSTEM_USERNAME);
+        changes.add(PropertyHistory.seal(sealed, since, ACL.SYSTEM_USERNAME));
+        return changes;
+    }
+
+    private static String getUser() {
+        return Jenkins.getAuthentication2().getName();
+    }
+
+    protected Object readResolve() {
+        if (properties == null) {
+            properties = PropertyTable.EMPTY;
+        }
+        return this;
+    }
+
+    /**
+     * Changes what the owner folder resolves to while dropping the cached properties of the folder and of its
+     * descendants, if this property has an owner yet.
+     */
+    private void update(Runnable change) {
+        if (owner == null) {
+            change.run();
+        } else {
+            PropertiesCache.publish(owner.getFullName(), change);
+        }
+    }
+
+    /**
+     * Indexes the keys the owner folder now defines, if this property has an owner yet. Never called while holding
+     * the lock on this property, so that no thread ever waits for the index while holding it.
+     */
+    private void index() {
+        if (owner != null) {
+            PropertiesIndex.update(owner.getFullName(), getTable());
         }
     }
 
@@ -99,5 +541,107 @@ public class FolderProperties<C extends AbstractFolder<?>> extends AbstractFolde
 
             return Messages.display_folder_properties();
         }
+
+        public FormValidation doCheckFile(@AncestorInPath AbstractFolder<?> folder, @QueryParameter String value) {
+            if (folder == null || !folder.hasPermission(Item.CONFIGURE) || Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            Path file;
+            try {
+                file = PropertiesFileSource.resolve(value.trim());
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(Messages.folder_properties_file_outside(PropertiesFileSource.DIRECTORY));
+            }
+            if (!Files.isRegularFile(file)) {
+                return FormValidation.warning(Messages.folder_properties_file_missing(file));
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckSets(@AncestorInPath AbstractFolder<?> folder, @QueryParameter String value) {
+            if (folder == null || !folder.hasPermission(Item.CONFIGURE)) {
+                return FormValidation.ok();
+            }
+            PropertySets propertySets = PropertySets.get();
+            Set<String> unknown = new TreeSet<>();
+            for (String id : PropertySets.parseIds(value)) {
+                String problem = PropertySets.checkId(id);
+                if (problem != null) {
+                    return FormValidation.error(problem);
+                }
+                if (!propertySets.has(id)) {
+                    unknown.add(id);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                return FormValidation.warning(Messages.folder_properties_sets_unknown(String.join(", ", unknown)));
+            }
+            return FormValidation.ok();
+        }
+
+        /**
+         * Validates all the properties edited as text in a single pass, rather than one request per property.
+         */
+        public FormValidation doCheckText(@AncestorInPath AbstractFolder<?> folder, @QueryParameter String value) {
+            if (folder == null || !folder.hasPermission(Item.CONFIGURE) || value == null) {
+                return FormValidation.ok();
+            }
+            List<StringProperty> properties;
+            try {
+                properties = parseText(value);
+            } catch (IOException | IllegalArgumentException e) {
+                return FormValidation.error(Messages.folder_properties_text_invalid(e.getMessage()));
+            }
+            return validate(properties);
+        }
+
+        /**
+         * Checks that the keys of some properties are neither blank nor defined more than once, and that their
+         * values do not refer to each other in a cycle, which only gets a warning as such properties can be saved.
+         *
+         * @param properties The properties to check.
+         * @return The outcome of all the checks.
+         */
+        static FormValidation validate(List<StringProperty> properties) {
+            String problem = checkKeys(properties);
+            if (problem != null) {
+                return FormValidation.error(problem);
+            }
+            Map<String, String> values = new LinkedHashMap<>();
+            for (StringProperty property : properties) {
+                values.put(property.getKey(), Util.fixNull(property.getValue()));
+            }
+            List<String> cycle = ExpansionPlan.compile(values).getCycle();
+            if (cycle != null) {
+                return FormValidation.warning(Messages.folder_properties_text_cycle(String.join(" -> ", cycle)));
+            }
+            return FormValidation.ok();
+        }
+
+        /**
+         * @return Why some properties cannot be saved, or {@code null} if they can.
+         */
+        static String checkKeys(List<StringProperty> properties) {
+            int blank = 0;
+            // Keys ignore case, like they do in the env.
+            Set<String> keys = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            Set<String> duplicates = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (StringProperty property : properties) {
+                String key = property.getKey();
+                if (key == null || key.trim().isEmpty()) {
+                    blank++;
+                } else if (!keys.add(key)) {
+                    duplicates.add(key);
+                }
+            }
+            List<String> problems = new ArrayList<>();
+            if (blank > 0) {
+                problems.add(Messages.folder_properties_text_blank(blank));
+            }
+            if (!duplicates.isEmpty()) {
+                problems.add(Messages.folder_properties_text_duplicate(String.join(", ", duplicates)));
+            }
+            return problems.isEmpty() ? null : String.join(" ", problems);
+        }
     }
 }
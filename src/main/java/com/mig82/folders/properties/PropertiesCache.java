@@ -0,0 +1,142 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of the {@link PropertyLayer} each folder resolves to, chained to those of all its ancestors.
+ * Entries are keyed by the full name of the folder and are dropped, together with those of all its descendants,
+ * whenever the folder publishes new properties or is reconfigured, saved, moved, renamed or deleted, so a cached layer
+ * is used as it is, without walking its ancestors again.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesCache {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesCache.class.getName());
+
+    private static final ConcurrentMap<String, PropertyLayer> RESOLVED = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped on every invalidation so that a resolution which raced with one is never cached.
+     */
+    private static final AtomicLong EPOCH = new AtomicLong();
+
+    private PropertiesCache() {}
+
+    static PropertyLayer get(String fullName) {
+        return RESOLVED.get(fullName);
+    }
+
+    static long epoch() {
+        return EPOCH.get();
+    }
+
+    /**
+     * Caches the resolved properties of a folder unless an invalidation happened since {@code epoch} was read.
+     */
+    static synchronized void put(String fullName, PropertyLayer resolved, long epoch) {
+        if (EPOCH.get() == epoch) {
+            RESOLVED.putIfAbsent(fullName, resolved);
+        }
+    }
+
+    /**
+     * Publishes new properties for a folder, dropping the cached properties of the folder and of its descendants
+     * before they are published, and refusing to cache any resolved until they were. Once a build got the new
+     * properties, no later one can get the old ones, so a cached layer needs no checking against the folders.
+     *
+     * @param fullName The full name of the folder.
+     * @param publish Makes the new properties visible to the resolutions.
+     */
+    static synchronized void publish(String fullName, Runnable publish) {
+        invalidate(fullName);
+        publish.run();
+        EPOCH.incrementAndGet();
+    }
+
+    /**
+     * Drops the cached properties of an item and of all of its descendants.
+     *
+     * @param fullName The full name of the item whose cached properties are no longer valid.
+     */
+    public static synchronized void invalidate(String fullName) {
+        EPOCH.incrementAndGet();
+        String prefix = fullName + "/";
+        RESOLVED.keySet().removeIf(key -> key.equals(fullName) || key.startsWith(prefix));
+        LOGGER.log(Level.FINER, "Invalidated cached folder properties of {0}", fullName);
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public static synchronized void invalidateAll() {
+        EPOCH.incrementAndGet();
+        RESOLVED.clear();
+        LOGGER.log(Level.FINER, "Invalidated all cached folder properties");
+    }
+
+    /**
+     * Keeps the cache in sync with changes to the item tree.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        /**
+         * Whether the items were loaded at least once, as the cache only needs to be dropped when they are reloaded.
+         */
+        private static volatile boolean loaded;
+
+        @Override
+        public void onLoaded() {
+            // On startup, the cache only holds what PropertiesWarmUp resolved from the items just loaded.
+            if (loaded) {
+                invalidateAll();
+            }
+            loaded = true;
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof AbstractFolder) {
+                invalidate(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidate(oldFullName);
+            invalidate(newFullName);
+        }
+    }
+
+    /**
+     * Catches changes made to a folder's properties without going through its configuration page, e.g. by calling
+     * {@link AbstractFolder#addProperty} from a script.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractFolder<?> folder) {
+                invalidate(folder.getFullName());
+            }
+        }
+    }
+}
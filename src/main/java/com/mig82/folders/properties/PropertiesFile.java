@@ -0,0 +1,48 @@
+package com.mig82.folders.properties;
+
+import hudson.FilePath;
+import hudson.slaves.WorkspaceList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes folder properties to a file next to the workspace of a build, so that they can be read by the scripts which
+ * need them instead of being passed to every process as environment variables.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesFile {
+
+    /**
+     * The environment variable holding the path of the file, unless another one is configured.
+     */
+    public static final String DEFAULT_VARIABLE = "FOLDER_PROPERTIES_FILE";
+
+    private PropertiesFile() {}
+
+    /**
+     * Writes properties to a new file in the temporary directory of a workspace, with a single remote call.
+     *
+     * @param workspace The workspace.
+     * @param format The format of the file.
+     * @param properties The properties to write, in order.
+     * @return The file, which the caller must delete when it is no longer needed.
+     * @throws IOException If the file could not be written.
+     * @throws InterruptedException If interrupted while writing it.
+     */
+    public static FilePath write(FilePath workspace, PropertiesFormat format, Map<String, String> properties)
+            throws IOException, InterruptedException {
+        StringWriter content = new StringWriter();
+        format.write(properties, content);
+        // Outside the workspace itself, so that it is neither archived nor committed by mistake.
+        FilePath dir = WorkspaceList.tempDir(workspace);
+        FilePath file = (dir == null ? workspace : dir)
+                .child("folder-properties-" + UUID.randomUUID() + format.getExtension());
+        // Writing creates the missing parent directories in the same call.
+        file.write(content.toString(), StandardCharsets.UTF_8.name());
+        return file;
+    }
+}
@@ -0,0 +1,270 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Reads folder properties from files under {@code $JENKINS_HOME/folder-properties}, for folders which define too many
+ * properties, or properties generated by other tools, to keep them in their configuration.
+ * Each file is parsed once into a {@link PropertyTable}, shared by all the folders pointing at it, in the format its
+ * extension names, or as a {@code .properties} file otherwise. The files are checked for changes in the background,
+ * and a file is only parsed again if its size or modification time changed and so did its checksum. Files of
+ * {@code -Dcom.mig82.folders.properties.PropertiesFileSource.mapThreshold} bytes or more, 8 MiB by default, are
+ * memory-mapped to compute their checksum and decoded as they are parsed, so that they are never read onto the heap
+ * as a whole. A file no folder reads any more is forgotten the next time the files are checked.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesFileSource {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesFileSource.class.getName());
+
+    /**
+     * The name of the directory of {@code $JENKINS_HOME} holding the files.
+     */
+    public static final String DIRECTORY = "folder-properties";
+
+    /**
+     * The size from which a file is memory-mapped. Not final so it can be changed from the script console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static long MAP_THRESHOLD =
+            SystemProperties.getLong(PropertiesFileSource.class.getName() + ".mapThreshold", 8L << 20);
+
+    /**
+     * What was last read from each file in use.
+     */
+    private static final Map<Path, FileState> LOADED = new ConcurrentHashMap<>();
+
+    private PropertiesFileSource() {}
+
+    /**
+     * What was read from a file, and the state of the file when it was read.
+     */
+    private static final class FileState {
+        private final long modified;
+        private final long size;
+        private final long checksum;
+        private final PropertyTable table;
+
+        FileState(long modified, long size, long checksum, PropertyTable table) {
+            this.modified = modified;
+            this.size = size;
+            this.checksum = checksum;
+            this.table = table;
+        }
+    }
+
+    /**
+     * Finds a file of properties.
+     *
+     * @param name The path of the file, relative to the directory holding them.
+     * @return The absolute path of the file.
+     * @throws IllegalArgumentException If the path points outside of the directory.
+     */
+    public static Path resolve(String name) {
+        Path directory = Jenkins.get().getRootDir().toPath().resolve(DIRECTORY).normalize();
+        Path file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            throw new IllegalArgumentException("Not a file under " + directory + ": " + name);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the properties in a file, reading it the first time they are needed.
+     *
+     * @param name The path of the file, relative to the directory holding them.
+     * @return The properties. The same table is returned as long as the file does not change. If the file cannot be
+     *         found or read, it holds no properties.
+     */
+    static PropertyTable get(String name) {
+        Path file;
+        try {
+            file = resolve(name);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, e.getMessage());
+            return PropertyTable.EMPTY;
+        }
+        FileState state = LOADED.get(file);
+        return state != null ? state.table : load(file).table;
+    }
+
+    /**
+     * Reads a file again if it changed since it was last read.
+     */
+    private static synchronized FileState load(Path file) {
+        FileState previous = LOADED.get(file);
+        FileState loaded;
+        try {
+            loaded = read(file, previous);
+        } catch (NoSuchFileException e) {
+            if (previous == null || previous.size >= 0) {
+                LOGGER.log(Level.WARNING, "Folder properties file {0} does not exist", file);
+            }
+            loaded = new FileState(-1, -1, 0, PropertyTable.EMPTY);
+        } catch (IOException | RuntimeException e) {
+            // Keep what was last read until the file is fixed.
+            LOGGER.log(Level.WARNING, "Could not read folder properties file " + file, e);
+            loaded = previous != null ? previous : new FileState(-1, -1, 0, PropertyTable.EMPTY);
+        }
+        LOADED.put(file, loaded);
+        return loaded;
+    }
+
+    private static FileState read(Path file, FileState previous) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        if (previous != null && previous.modified == modified && previous.size == size) {
+            return previous;
+        }
+        long checksum;
+        PropertyTable table;
+        if (size >= MAP_THRESHOLD) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                checksum = checksum(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                if (previous != null && previous.checksum == checksum) {
+                    // Touched, or written again with the same content.
+                    return new FileState(modified, size, checksum, previous.table);
+                }
+                // Decoded a buffer at a time rather than from the mapping, which would take a copy of the whole file.
+                table = parse(file, Channels.newReader(channel.position(0), decoder(), -1));
+            }
+        } else {
+            byte[] bytes = Files.readAllBytes(file);
+            checksum = checksum(ByteBuffer.wrap(bytes));
+            if (previous != null && previous.checksum == checksum) {
+                return new FileState(modified, size, checksum, previous.table);
+            }
+            table = parse(file, new InputStreamReader(new ByteArrayInputStream(bytes), decoder()));
+        }
+        LOGGER.log(Level.FINE, "Read {0} folder properties from {1}", new Object[] {table.size(), file});
+        return new FileState(modified, size, checksum, table);
+    }
+
+    private static long checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * Decodes UTF-8, replacing malformed input rather than failing on it.
+     */
+    private static CharsetDecoder decoder() {
+        return StandardCharsets.UTF_8
+                .newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static PropertyTable parse(Path file, Reader reader) throws IOException {
+        PropertiesFormat format =
+                PropertiesFormat.forFileName(file.getFileName().toString(), PropertiesFormat.PROPERTIES);
+        try (reader) {
+            return PropertyTable.of(format.read(reader));
+        }
+    }
+
+    /**
+     * Reads the files in use again if they changed, and returns the paths of those which did.
+     */
+    static Set<Path> reload() {
+        Set<Path> changed = new HashSet<>();
+        for (Map.Entry<Path, FileState> entry : LOADED.entrySet()) {
+            if (load(entry.getKey()).table != entry.getValue().table) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return Whether what was read from a file is remembered.
+     */
+    static boolean isLoaded(Path file) {
+        return LOADED.containsKey(file);
+    }
+
+    /**
+     * Forgets what was read from some files, unless they were read again meanwhile.
+     */
+    private static synchronized void forget(Set<Path> files) {
+        LOADED.keySet().removeAll(files);
+    }
+
+    /**
+     * Checks the files in use for changes, and publishes the new properties of the folders using those which changed.
+     * The files no folder reads any more are forgotten.
+     */
+    @Extension
+    public static class ReloadWork extends AsyncPeriodicWork {
+
+        public ReloadWork() {
+            super("Folder properties files");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return SystemProperties.getLong(
+                    PropertiesFileSource.class.getName() + ".recurrencePeriod", TimeUnit.MINUTES.toMillis(1));
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            if (LOADED.isEmpty()) {
+                return;
+            }
+            // Taken before looking at the folders, so that a file first read meanwhile is not forgotten.
+            Set<Path> unused = new HashSet<>(LOADED.keySet());
+            Set<Path> changed = reload();
+            if (!changed.isEmpty()) {
+                listener.getLogger().println("Reloading the folder properties of the folders using " + changed);
+            }
+            try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                for (AbstractFolder<?> folder : Jenkins.get().allItems(AbstractFolder.class)) {
+                    FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+                    Path file = folderProperties == null ? null : folderProperties.getFilePath();
+                    if (file != null) {
+                        unused.remove(file);
+                        if (changed.contains(file)) {
+                            folderProperties.reload();
+                        }
+                    }
+                }
+            }
+            forget(unused);
+        }
+    }
+}
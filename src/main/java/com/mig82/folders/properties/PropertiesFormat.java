@@ -0,0 +1,434 @@
+package com.mig82.folders.properties;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serial;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+
+/**
+ * The formats in which folder properties can be imported and exported in bulk.
+ * All of them are read and written in order, so that importing what was exported keeps the order of the properties.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public enum PropertiesFormat {
+
+    /**
+     * A Java {@code .properties} file.
+     */
+    PROPERTIES("text/plain") {
+        @Override
+        public List<StringProperty> read(Reader reader) throws IOException {
+            OrderedProperties ordered = new OrderedProperties();
+            ordered.load(reader);
+            return ordered.properties;
+        }
+
+        @Override
+        public void write(Map<String, String> properties, Writer writer) throws IOException {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writer.write(escapeProperty(entry.getKey(), true));
+                writer.write('=');
+                writer.write(escapeProperty(entry.getValue(), false));
+                writer.write('\n');
+            }
+        }
+    },
+
+    /**
+     * A dotenv file, made of {@code KEY=VALUE} lines which may be prefixed with {@code export} and whose values may
+     * be single or double-quoted. Keys cannot be quoted, so those which would not be read back as they are cannot be
+     * written.
+     */
+    DOTENV("text/plain") {
+        @Override
+        public List<StringProperty> read(Reader reader) throws IOException {
+            List<StringProperty> properties = new ArrayList<>();
+            BufferedReader lines = new BufferedReader(reader);
+            int number = 0;
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("export ")) {
+                    line = line.substring("export ".length()).trim();
+                }
+                int separator = line.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Line " + number + " is not a KEY=VALUE pair");
+                }
+                String key = line.substring(0, separator).trim();
+                String value = line.substring(separator + 1).trim();
+                properties.add(new StringProperty(key, unquote(value, number)));
+            }
+            return properties;
+        }
+
+        /**
+         * @throws IllegalArgumentException If a key contains a {@code =} or a line break, starts with {@code #} or
+         *                                  {@code export}, or starts or ends with whitespace. Nothing is written then.
+         */
+        @Override
+        public void write(Map<String, String> properties, Writer writer) throws IOException {
+            // Checked first, so that no file is left with only some of the properties.
+            for (String key : properties.keySet()) {
+                checkDotenvKey(key);
+            }
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('=');
+                writer.write(quote(entry.getValue()));
+                writer.write('\n');
+            }
+        }
+    },
+
+    /**
+     * A YAML document holding a single mapping of scalar values.
+     */
+    YAML("application/yaml") {
+        @Override
+        public List<StringProperty> read(Reader reader) {
+            return readMapping(reader, "YAML document");
+        }
+
+        @Override
+        public void write(Map<String, String> properties, Writer writer) {
+            DumperOptions options = new DumperOptions();
+            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+            new Yaml(options).dump(properties, writer);
+        }
+    },
+
+    /**
+     * A JSON object whose values are strings, numbers, booleans or nulls, the latter three read as they are written.
+     */
+    JSON("application/json") {
+        @Override
+        public List<StringProperty> read(Reader reader) {
+            // JSON is read as YAML, of which it is a subset, because json-lib turns strings which look like JSON into
+            // objects or arrays.
+            return readMapping(reader, "JSON object");
+        }
+
+        @Override
+        public void write(Map<String, String> properties, Writer writer) throws IOException {
+            writer.write('{');
+            String separator = "\n";
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writer.write(separator);
+                writer.write("  ");
+                writer.write(jsonQuote(entry.getKey()));
+                writer.write(": ");
+                writer.write(jsonQuote(entry.getValue()));
+                separator = ",\n";
+            }
+            writer.write(properties.isEmpty() ? "}\n" : "\n}\n");
+        }
+    };
+
+    /**
+     * Values which can be written to a dotenv file as they are.
+     */
+    private static final Pattern BARE_VALUE = Pattern.compile("[A-Za-z0-9_./:@%+,=${}-]*");
+
+    private final String contentType;
+
+    PropertiesFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Reads properties in this format.
+     *
+     * @param reader The reader to read from.
+     * @return The properties, in the order they were read.
+     * @throws IOException If the properties could not be read.
+     * @throws IllegalArgumentException If the content is not valid in this format.
+     */
+    public abstract List<StringProperty> read(Reader reader) throws IOException;
+
+    /**
+     * Writes properties in this format.
+     *
+     * @param properties The keys and values of the properties, in the order to write them.
+     * @param writer The writer to write to.
+     * @throws IOException If the properties could not be written.
+     */
+    public abstract void write(Map<String, String> properties, Writer writer) throws IOException;
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return The extension of the files written in this format.
+     */
+    public String getExtension() {
+        return this == DOTENV ? ".env" : "." + name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds a format by name.
+     *
+     * @param name The name of the format, such as {@code properties}, {@code dotenv}, {@code yaml} or {@code json}.
+     * @return The format.
+     * @throws IllegalArgumentException If there is no such format.
+     */
+    public static PropertiesFormat forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "properties":
+                return PROPERTIES;
+            case "dotenv":
+            case "env":
+                return DOTENV;
+            case "yaml":
+            case "yml":
+                return YAML;
+            case "json":
+                return JSON;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + name);
+        }
+    }
+
+    /**
+     * Guesses the format of a file from its extension.
+     *
+     * @param fileName The name of the file.
+     * @param fallback The format to assume if the extension is not known.
+     * @return The format.
+     */
+    public static PropertiesFormat forFileName(String fileName, PropertiesFormat fallback) {
+        if (fileName != null) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".properties")) {
+                return PROPERTIES;
+            } else if (name.endsWith(".env")) {
+                return DOTENV;
+            } else if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+                return YAML;
+            } else if (name.endsWith(".json")) {
+                return JSON;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Remembers the order in which {@link Properties#load(Reader)} reads the properties.
+     */
+    private static final class OrderedProperties extends Properties {
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final transient List<StringProperty> properties = new ArrayList<>();
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            properties.add(new StringProperty((String) key, (String) value));
+            return super.put(key, value);
+        }
+    }
+
+    /**
+     * Escapes a key or value the same way {@link Properties#store(Writer, String)} does.
+     */
+    static String escapeProperty(String s, boolean key) {
+        StringBuilder escaped = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case ' ':
+                    escaped.append(i == 0 || key ? "\\ " : " ");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\f':
+                    escaped.append("\\f");
+                    break;
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    escaped.append('\\').append(c);
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reads the properties held by a YAML mapping of scalars.
+     * Scalars are kept as they are written rather than converted to numbers, booleans, dates or nulls, which would not
+     * give back the same text, e.g. {@code 1.10} would become {@code 1.1} and {@code 0755} would become {@code 493}.
+     */
+    static List<StringProperty> readMapping(Reader reader, String description) {
+        Node document;
+        try {
+            document = new Yaml(new SafeConstructor(new LoaderOptions())).compose(reader);
+        } catch (YAMLException e) {
+            throw new IllegalArgumentException("The " + description + " cannot be read: " + e.getMessage(), e);
+        }
+        List<StringProperty> properties = new ArrayList<>();
+        if (document == null) {
+            return properties;
+        }
+        if (!(document instanceof MappingNode mapping)) {
+            throw new IllegalArgumentException("The " + description + " must be a mapping of keys to values");
+        }
+        for (NodeTuple entry : mapping.getValue()) {
+            if (!(entry.getKeyNode() instanceof ScalarNode key)) {
+                throw new IllegalArgumentException("The " + description + " has a key which is not a scalar");
+            }
+            if (!(entry.getValueNode() instanceof ScalarNode value)) {
+                throw new IllegalArgumentException("The value of " + key.getValue() + " is not a scalar");
+            }
+            properties.add(new StringProperty(key.getValue(), value.getValue()));
+        }
+        return properties;
+    }
+
+    /**
+     * Double-quotes a JSON string, only using the escapes YAML understands too.
+     */
+    public static String jsonQuote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c == '\r') {
+                quoted.append("\\r");
+            } else if (c == '\t') {
+                quoted.append("\\t");
+            } else if (c < 0x20 || c == 0x7f) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Checks that a key would be read back from a dotenv file as it was written.
+     */
+    static void checkDotenvKey(String key) {
+        if (key.isEmpty()
+                || !key.equals(key.trim())
+                || key.startsWith("#")
+                || key.startsWith("export ")
+                || key.indexOf('=') >= 0
+                || key.indexOf('\n') >= 0
+                || key.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Cannot write the key " + jsonQuote(key) + " to a dotenv file");
+        }
+    }
+
+    /**
+     * Double-quotes a dotenv value, unless it can be written as it is.
+     */
+    static String quote(String value) {
+        if (BARE_VALUE.matcher(value).matches()) {
+            return value;
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    quoted.append('\\').append(c);
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Removes the quotes around a dotenv value, if any, and the escapes within double quotes.
+     */
+    static String unquote(String value, int line) {
+        if (value.startsWith("'")) {
+            if (value.length() < 2 || !value.endsWith("'")) {
+                throw new IllegalArgumentException("Unterminated single quote on line " + line);
+            }
+            return value.substring(1, value.length() - 1);
+        }
+        if (!value.startsWith("\"")) {
+            return value;
+        }
+        StringBuilder unquoted = new StringBuilder(value.length());
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                if (i != value.length() - 1) {
+                    throw new IllegalArgumentException("Unexpected text after the closing quote on line " + line);
+                }
+                return unquoted.toString();
+            }
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    default:
+                        // An escaped quote, backslash or any other character stands for itself.
+                }
+            }
+            unquoted.append(c);
+        }
+        throw new IllegalArgumentException("Unterminated double quote on line " + line);
+    }
+}
@@ -0,0 +1,433 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * An instance-wide index from each property key to the folders which define it, so that finding where a key is
+ * defined and which jobs inherit it does not need to read every folder.
+ * It is built the first time it is queried once all items have been loaded, then kept up to date as folders are
+ * reconfigured, saved, created, moved, renamed or deleted. Lookups ignore the case of keys, like resolution does.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesIndex.class.getName());
+
+    /**
+     * The full names of the folders defining each key. The sets are never modified, only replaced.
+     */
+    private static final Map<String, NavigableSet<String>> FOLDERS_BY_KEY =
+            new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * The keys defined by each folder, needed to update {@link #FOLDERS_BY_KEY} when the folder changes.
+     * Only accessed while holding the lock on this class.
+     */
+    private static final Map<String, Set<String>> KEYS_BY_FOLDER = new HashMap<>();
+
+    private static volatile boolean built;
+
+    /**
+     * The changes made to folders while the index is being built, which are replayed once it is, or {@code null} if
+     * it is not being built. Only accessed while holding the lock on this class.
+     */
+    private static List<Runnable> pending;
+
+    /**
+     * Held while the index is being built, so that it is built once and queries wait for it.
+     */
+    private static final Object BUILD = new Object();
+
+    private PropertiesIndex() {}
+
+    /**
+     * A folder defining a key, as seen from the folders or jobs below it.
+     */
+    public static final class Definition {
+        private final AbstractFolder<?> folder;
+        private final String value;
+        private final AbstractFolder<?> shadowed;
+        private final boolean winning;
+
+        Definition(AbstractFolder<?> folder, String value, AbstractFolder<?> shadowed, boolean winning) {
+            this.folder = folder;
+            this.value = value;
+            this.shadowed = shadowed;
+            this.winning = winning;
+        }
+
+        public AbstractFolder<?> getFolder() {
+            return folder;
+        }
+
+        /**
+         * @return The value the folder defines, or {@code null} if the current user may not see it.
+         */
+        public String getValue() {
+            return folder.hasPermission(Item.EXTENDED_READ) ? value : null;
+        }
+
+        /**
+         * @return The nearest ancestor folder which defines the same key, whose definition this one shadows, or
+         *         {@code null} if there is none or the current user may not read it.
+         */
+        public AbstractFolder<?> getShadowed() {
+            return shadowed != null && shadowed.hasPermission(Item.READ) ? shadowed : null;
+        }
+
+        /**
+         * @return Whether this is the definition a job gets, as the nearest one, whether or not the current user may
+         *         read the others. Always {@code false} unless the definitions were found for a job.
+         */
+        public boolean isWinning() {
+            return winning;
+        }
+    }
+
+    /**
+     * Finds every folder defining a key.
+     *
+     * @param key The key to look for, ignoring case.
+     * @return The definitions in the folders the current user may read, sorted by the full name of the folder.
+     */
+    public static List<Definition> getDefinitions(String key) {
+        NavigableSet<String> folders = getFolderNames(key);
+        List<Definition> definitions = new ArrayList<>(folders.size());
+        for (String fullName : folders) {
+            AbstractFolder<?> folder = Jenkins.get().getItemByFullName(fullName, AbstractFolder.class);
+            if (folder != null) {
+                AbstractFolder<?> shadowed = nextDefiningFolder(folders, above(folder), key);
+                definitions.add(new Definition(folder, getValue(folder, key), shadowed, false));
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Finds the folders a job may inherit a key from, which are its ancestors defining the key.
+     *
+     * @param job The job.
+     * @param key The key to look for, ignoring case.
+     * @return The definitions in the order they are resolved, each shadowing the next. Folders the current user may
+     *         not read are left out, so the first one listed is only the value the job gets if it is winning.
+     */
+    public static List<Definition> getDefinitions(Job<?, ?> job, String key) {
+        NavigableSet<String> folders = getFolderNames(key);
+        List<AbstractFolder<?>> chain = new ArrayList<>();
+        for (AbstractFolder<?> folder = nextDefiningFolder(folders, job.getParent(), key);
+                folder != null;
+                folder = nextDefiningFolder(folders, above(folder), key)) {
+            chain.add(folder);
+        }
+        List<Definition> definitions = new ArrayList<>(chain.size());
+        for (int i = 0; i < chain.size(); i++) {
+            AbstractFolder<?> folder = chain.get(i);
+            if (folder.hasPermission(Item.READ)) {
+                AbstractFolder<?> shadowed = i + 1 < chain.size() ? chain.get(i + 1) : null;
+                definitions.add(new Definition(folder, getValue(folder, key), shadowed, i == 0));
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Finds the jobs which get a key from a folder, as no folder between them defines it too.
+     *
+     * @param folder The folder defining the key.
+     * @param key The key, ignoring case.
+     * @return The jobs the current user may read, sorted by full name.
+     */
+    public static List<Job<?, ?>> getInheritingJobs(AbstractFolder<?> folder, String key) {
+        NavigableSet<String> folders = getFolderNames(key);
+        List<Job<?, ?>> jobs = new ArrayList<>();
+        if (!folders.contains(folder.getFullName())) {
+            return jobs;
+        }
+        for (Job<?, ?> job : folder.getAllItems(Job.class)) {
+            if (nextDefiningFolder(folders, job.getParent(), key) == folder) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort((a, b) -> a.getFullName().compareTo(b.getFullName()));
+        return jobs;
+    }
+
+    private static NavigableSet<String> getFolderNames(String key) {
+        ensureBuilt();
+        NavigableSet<String> folders = key == null ? null : FOLDERS_BY_KEY.get(key);
+        return folders == null ? Collections.emptyNavigableSet() : folders;
+    }
+
+    private static String getValue(AbstractFolder<?> folder, String key) {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        return folderProperties == null ? null : folderProperties.getTable().get(key);
+    }
+
+    /**
+     * Walks up from a group to the nearest folder which is known to define a key and which still does.
+     */
+    private static AbstractFolder<?> nextDefiningFolder(NavigableSet<String> folders, ItemGroup<?> group, String key) {
+        // Skip any ancestors which are not folders, like resolution does.
+        while (group instanceof Item item) {
+            if (item instanceof AbstractFolder<?> folder) {
+                if (folders.contains(folder.getFullName()) && getValue(folder, key) != null) {
+                    return folder;
+                }
+                if (PropertiesLoader.isSealed(folder)) {
+                    return null;
+                }
+            }
+            group = item.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the group to walk up from after a folder, which is none if the folder is sealed.
+     */
+    private static ItemGroup<?> above(AbstractFolder<?> folder) {
+        return PropertiesLoader.isSealed(folder) ? null : folder.getParent();
+    }
+
+    /**
+     * Indexes the keys a folder defines, replacing those it used to define.
+     *
+     * @param fullName The full name of the folder.
+     * @param table The properties it now defines.
+     */
+    static synchronized void update(String fullName, PropertyTable table) {
+        if (pending != null) {
+            // The folder may already have been read by the build of the index, so apply the change after it.
+            pending.add(() -> update(fullName, table));
+            return;
+        }
+        if (!built) {
+            // The whole index will be built from the current state of the folders when it is first needed.
+            return;
+        }
+        Set<String> keys = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < table.size(); i++) {
+            if (table.getKey(i) != null) {
+                keys.add(table.getKey(i));
+            }
+        }
+        Set<String> previous = keys.isEmpty() ? KEYS_BY_FOLDER.remove(fullName) : KEYS_BY_FOLDER.put(fullName, keys);
+        if (previous != null) {
+            for (String key : previous) {
+                if (!keys.contains(key)) {
+                    removeFolder(key, fullName);
+                }
+            }
+        }
+        for (String key : keys) {
+            if (previous == null || !previous.contains(key)) {
+                addFolder(key, fullName);
+            }
+        }
+    }
+
+    private static void update(AbstractFolder<?> folder) {
+        update(folder.getFullName(), tableOf(folder));
+    }
+
+    /**
+     * Reads the properties of a folder, which must never be done while holding the lock on this class.
+     */
+    private static PropertyTable tableOf(AbstractFolder<?> folder) {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        return folderProperties == null ? PropertyTable.EMPTY : folderProperties.getTable();
+    }
+
+    /**
+     * Drops an item and all of its descendants from the index.
+     */
+    private static synchronized void remove(String fullName) {
+        if (pending != null) {
+            pending.add(() -> remove(fullName));
+            return;
+        }
+        if (!built) {
+            return;
+        }
+        String prefix = fullName + "/";
+        List<String> removed = new ArrayList<>();
+        for (String folder : KEYS_BY_FOLDER.keySet()) {
+            if (folder.equals(fullName) || folder.startsWith(prefix)) {
+                removed.add(folder);
+            }
+        }
+        for (String folder : removed) {
+            for (String key : KEYS_BY_FOLDER.remove(folder)) {
+                removeFolder(key, folder);
+            }
+        }
+    }
+
+    private static void addFolder(String key, String fullName) {
+        NavigableSet<String> folders = new TreeSet<>();
+        NavigableSet<String> previous = FOLDERS_BY_KEY.get(key);
+        if (previous != null) {
+            folders.addAll(previous);
+        }
+        folders.add(fullName);
+        FOLDERS_BY_KEY.put(key, Collections.unmodifiableNavigableSet(folders));
+    }
+
+    private static void removeFolder(String key, String fullName) {
+        NavigableSet<String> previous = FOLDERS_BY_KEY.get(key);
+        if (previous != null && previous.contains(fullName)) {
+            NavigableSet<String> folders = new TreeSet<>(previous);
+            folders.remove(fullName);
+            if (folders.isEmpty()) {
+                FOLDERS_BY_KEY.remove(key);
+            } else {
+                FOLDERS_BY_KEY.put(key, Collections.unmodifiableNavigableSet(folders));
+            }
+        }
+    }
+
+    private static void ensureBuilt() {
+        if (!built) {
+            synchronized (BUILD) {
+                if (!built) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the whole index, to build it again from the folders when it is next queried.
+     */
+    private static synchronized void reset() {
+        FOLDERS_BY_KEY.clear();
+        KEYS_BY_FOLDER.clear();
+        built = false;
+        // A build of the index in progress read the folders before they were reloaded.
+        pending = null;
+    }
+
+    /**
+     * Reads the properties of every folder again.
+     * They are read without holding the lock on this class, as reading the properties of a folder may wait for a
+     * change to it which is itself waiting to update the index. Changes made meanwhile are applied once the index is
+     * swapped in.
+     */
+    static void rebuild() {
+        synchronized (BUILD) {
+            synchronized (PropertiesIndex.class) {
+                pending = new ArrayList<>();
+            }
+            Map<String, PropertyTable> tables = new LinkedHashMap<>();
+            // Index every folder, not just those the user who happens to trigger the build of the index may read.
+            try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                for (AbstractFolder<?> folder : Jenkins.get().allItems(AbstractFolder.class)) {
+                    tables.put(folder.getFullName(), tableOf(folder));
+                }
+            }
+            synchronized (PropertiesIndex.class) {
+                List<Runnable> changes = pending;
+                if (changes == null) {
+                    // Reset meanwhile, so built again from the reloaded folders when next queried.
+                    return;
+                }
+                pending = null;
+                FOLDERS_BY_KEY.clear();
+                KEYS_BY_FOLDER.clear();
+                built = true;
+                for (Map.Entry<String, PropertyTable> table : tables.entrySet()) {
+                    update(table.getKey(), table.getValue());
+                }
+                for (Runnable change : changes) {
+                    change.run();
+                }
+                LOGGER.log(Level.FINE, "Indexed {0} keys defined by {1} folders", new Object[] {
+                    FOLDERS_BY_KEY.size(), KEYS_BY_FOLDER.size()
+                });
+            }
+        }
+    }
+
+    /**
+     * Keeps the index in sync with changes to the item tree.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            // Built when first queried, so that loading Jenkins does not decode the properties of every folder.
+            reset();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            if (item instanceof AbstractFolder<?> folder) {
+                update(folder);
+            }
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof AbstractFolder<?> folder) {
+                update(folder);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            remove(oldFullName);
+            if (item instanceof AbstractFolder<?> folder) {
+                update(folder);
+                try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                    for (AbstractFolder<?> descendant : folder.getAllItems(AbstractFolder.class)) {
+                        update(descendant);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Catches changes made to a folder's properties without going through its configuration page.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractFolder<?> folder) {
+                update(folder);
+            }
+        }
+    }
+}
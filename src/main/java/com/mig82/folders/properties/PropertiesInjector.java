@@ -0,0 +1,133 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.EnvironmentContributor;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Adds the properties of the folders which opted into it to the environment of every build below them, and of their
+ * jobs, without overriding the variables already defined. The values are expanded against that environment.
+ * Jenkins computes those environments far more often than builds start, e.g. to render pages or poll the SCM, so what
+ * each folder holding jobs resolves to is remembered by identity until the next invalidation of the
+ * {@link PropertiesCache}. Each call then costs a single lookup, plus the copy of the properties into the environment
+ * when they are injected.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+public class PropertiesInjector extends EnvironmentContributor {
+
+    /**
+     * What the jobs of each group get, valid as long as no invalidation happened since {@code epoch}.
+     */
+    private static final class Injections {
+        private final long epoch;
+        private final ConcurrentMap<ItemGroup<?>, PropertyLayer> layers = new ConcurrentHashMap<>();
+
+        Injections(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static volatile Injections injections = new Injections(PropertiesCache.epoch());
+
+    @Override
+    public void buildEnvironmentFor(@NonNull Run r, @NonNull EnvVars envs, @NonNull TaskListener listener) {
+        inject(r.getParent(), envs);
+    }
+
+    @Override
+    public void buildEnvironmentFor(@NonNull Job j, @NonNull EnvVars envs, @NonNull TaskListener listener) {
+        inject(j, envs);
+    }
+
+    /**
+     * Adds the properties to an environment, expanded against it just like the build wrapper and the step do.
+     */
+    private static void inject(Job<?, ?> job, EnvVars envs) {
+        PropertyLayer layer = getInjected(job);
+        if (layer == PropertyLayer.EMPTY) {
+            return;
+        }
+        Map<String, String> properties = layer.asMap();
+        Map<String, String> injected = null;
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (envs.containsKey(entry.getKey())) {
+                if (injected == null) {
+                    injected = new LinkedHashMap<>(properties);
+                }
+                injected.remove(entry.getKey());
+            }
+        }
+        // Unless the environment already defines some of the properties, reuse the plan compiled for the folder.
+        ExpansionPlan plan = injected == null ? layer.getExpansionPlan() : ExpansionPlan.compile(injected);
+        if (injected == null) {
+            injected = properties;
+        }
+        EnvVars expanded = new EnvVars(envs);
+        plan.apply(expanded);
+        for (Map.Entry<String, String> entry : injected.entrySet()) {
+            // Keys like PATH+EXTRA are not variables themselves, so keep their values as they are.
+            String value = expanded.get(entry.getKey());
+            envs.put(entry.getKey(), value != null ? value : entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the properties injected into the builds of a job.
+     *
+     * @param job The job.
+     * @return What the job inherits if a folder above it opted into injection, or else {@link PropertyLayer#EMPTY}.
+     */
+    static PropertyLayer getInjected(Job<?, ?> job) {
+        ItemGroup<?> group = job.getParent();
+        Injections injections = PropertiesInjector.injections;
+        long epoch = PropertiesCache.epoch();
+        if (injections.epoch == epoch) {
+            PropertyLayer layer = injections.layers.get(group);
+            if (layer != null) {
+                return layer;
+            }
+        } else {
+            // Dropped as a whole, which also forgets the folders which were deleted.
+            injections = new Injections(epoch);
+            PropertiesInjector.injections = injections;
+        }
+        PropertyLayer layer = isInjected(group) ? PropertiesLoader.loadFolderPropertyLayer(job) : PropertyLayer.EMPTY;
+        // Unless an invalidation raced with the resolution, in which case the next call resolves again.
+        if (PropertiesCache.epoch() == epoch) {
+            injections.layers.put(group, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Tells whether a folder above the jobs of a group, up to the nearest sealed one, opted into injection.
+     */
+    private static boolean isInjected(ItemGroup<?> group) {
+        while (group instanceof Item item) {
+            if (item instanceof AbstractFolder<?> folder) {
+                FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+                if (folderProperties != null && folderProperties.isInject()) {
+                    return true;
+                }
+                if (folderProperties != null && folderProperties.isSealed()) {
+                    return false;
+                }
+            }
+            group = item.getParent();
+        }
+        return false;
+    }
+}
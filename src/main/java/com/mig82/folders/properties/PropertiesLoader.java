@@ -1,10 +1,12 @@
 package com.mig82.folders.properties;
 
 import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.metrics.ResolutionMetrics;
 import hudson.EnvVars;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.Job;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -12,6 +14,8 @@ import jenkins.model.Jenkins;
 /**
  * A PropertiesLoader which can be used in both Freestyle Job build wrapper and custom pipeline step.
  * The loader loads StringProperty from current job folder to its ancient recursively.
+ * Each folder resolves to a {@link PropertyLayer} chained to that of its parent, which is kept in the
+ * {@link PropertiesCache}, so the walk only happens once per folder until one of its ancestors changes.
  *
  * @author Miguelangel Fernandez Mendoza and Gong Yi
  */
@@ -19,39 +23,118 @@ public class PropertiesLoader {
     private static final Logger LOGGER = Logger.getLogger(PropertiesLoader.class.getName());
 
     public static EnvVars loadFolderProperties(Job job) {
+        EnvVars envVars = new EnvVars(loadFolderPropertyLayer(job).asMap());
+        LOGGER.log(Level.FINE, "6. Context env is: {0}", envVars);
+        return envVars;
+    }
+
+    /**
+     * Resolves the properties a job inherits without copying them, so that all the jobs in a folder share them.
+     *
+     * @param job The job whose ancestors to search.
+     * @return The layer of the nearest ancestor folder, chained to those of its own ancestors.
+     */
+    public static PropertyLayer loadFolderPropertyLayer(Job job) {
         LOGGER.log(Level.FINER, "1. Searching for folder properties in ancestors of: {0}\n", job.getDisplayName());
-        ItemGroup parent = job.getParent();
-        EnvVars envVars = new EnvVars();
-        // Look in all the ancestors...
+        long start = ResolutionMetrics.start();
+        ResolutionMetrics.Walk walk = ResolutionMetrics.walk();
+        PropertyLayer layer = resolve(job.getParent(), walk);
+        ResolutionMetrics.stop(walk, start);
+        return layer;
+    }
+
+    /**
+     * Resolves the properties the items of a folder inherit, which include those the folder defines itself.
+     *
+     * @param folder The folder whose ancestors to search.
+     * @return The layer of the folder, chained to those of its ancestors.
+     */
+    public static PropertyLayer loadFolderPropertyLayer(AbstractFolder<?> folder) {
+        return resolve(folder);
+    }
+
+    /**
+     * Selects the properties of a layer which a filter matches, walking up from the layer to the topmost one so that
+     * only the selected properties are ever copied.
+     *
+     * @param layer The layer a job inherits its properties from.
+     * @param filter The filter selecting the properties the job needs.
+     * @return The view of the layer itself if the filter selects every property, or else a copy of the selected ones.
+     */
+    public static Map<String, String> select(PropertyLayer layer, PropertyFilter filter) {
+        if (filter.isAll()) {
+            return layer.asMap();
+        }
+        // Keys ignore case, and the nearest definition of a key wins.
+        EnvVars selected = new EnvVars();
+        for (; layer != null; layer = layer.getParent()) {
+            PropertyTable table = layer.getTable();
+            for (int i = 0; i < table.size(); i++) {
+                String key = table.getKey(i);
+                String value = table.getValue(i);
+                if (key != null && value != null && !selected.containsKey(key) && filter.matches(key)) {
+                    selected.put(key, value);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Looks up a single folder property, stopping at the nearest ancestor folder which defines it.
+     *
+     * @param job The job whose ancestors to search.
+     * @param key The key of the property.
+     * @return The value of the property, or {@code null} if no ancestor folder defines it.
+     */
+    public static String loadFolderProperty(Job job, String key) {
+        LOGGER.log(Level.FINER, "1. Searching for folder property {0} in ancestors of: {1}\n", new Object[] {
+            key, job.getDisplayName()
+        });
+        ItemGroup<?> parent = job.getParent();
         while (parent != null) {
-            if (parent instanceof AbstractFolder folder) {
-                LOGGER.log(Level.FINEST, "2. Searching for folder properties in: {0}\n", parent.getDisplayName());
-                FolderProperties folderProperties =
-                        (FolderProperties) folder.getProperties().get(FolderProperties.class);
-                if (folderProperties != null) {
-                    StringProperty[] newlyFoundProperties = folderProperties.getProperties();
-                    LOGGER.log(Level.FINER, "3. Found {0} folder properties in {1}\n", new Object[] {
-                        newlyFoundProperties.length, parent.getDisplayName()
-                    });
-                    // If we find folder project properties on this parent, we add all to the context.
-                    for (StringProperty property : newlyFoundProperties) {
-                        // Only add the property if it has not been already defined in a sub-folder.
-                        if (envVars.get(property.getKey()) == null) {
-                            LOGGER.log(Level.FINEST, "4. Adding ({0}, {1}) to the context env", new Object[] {
-                                property.getKey(), property.getValue()
-                            });
-                            envVars.put(property.getKey(), property.getValue());
-                        } else {
-                            LOGGER.log(
-                                    Level.FINEST,
-                                    "4. Will not add duplicate property {0} to the context env",
-                                    new Object[] {property.getKey()});
-                        }
-                    }
-                    LOGGER.log(Level.FINEST, "5. Context env: {0}", envVars.toString());
+            if (parent instanceof AbstractFolder<?> folder) {
+                // If this folder has already been resolved, it knows the answer for all its ancestors.
+                PropertyLayer cached = PropertiesCache.get(folder.getFullName());
+                if (cached != null) {
+                    return cached.get(key);
+                }
+                String value = tableOf(folder).get(key);
+                if (value != null) {
+                    LOGGER.log(Level.FINEST, "2. Found {0} in: {1}\n", new Object[] {key, folder.getDisplayName()});
+                    return value;
                 }
+                if (isSealed(folder)) {
+                    // Its ancestors are not inherited from.
+                    return null;
+                }
+            } else if (parent instanceof Jenkins) {
+                break;
+            }
+            if (parent instanceof Item item) {
+                parent = item.getParent();
+            } else {
+                parent = null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the properties inherited by the items of a group, which is their nearest ancestor folder's.
+     */
+    static PropertyLayer resolve(ItemGroup<?> parent) {
+        return resolve(parent, null);
+    }
+
+    private static PropertyLayer resolve(ItemGroup<?> parent, ResolutionMetrics.Walk walk) {
+        // Skip any ancestors which are not folders.
+        while (parent != null) {
+            if (parent instanceof AbstractFolder<?> folder) {
+                return resolveFolder(folder, walk);
             } else if (parent instanceof Jenkins) {
                 LOGGER.log(Level.FINEST, "2. Reached Jenkins root. Stopping search\n");
+                return PropertyLayer.EMPTY;
             } else {
                 LOGGER.log(Level.WARNING, "2. Unknown parent type: {0} of class {1}\n", new Object[] {
                     parent.getDisplayName(), parent.getClass().getName()
@@ -64,7 +147,75 @@ public class PropertiesLoader {
                 parent = null;
             }
         }
-        LOGGER.log(Level.FINE, "6. Context env is: {0}", envVars.toString());
-        return envVars;
+        return PropertyLayer.EMPTY;
+    }
+
+    /**
+     * Returns the layer of a folder, either from the cache or by chaining its own properties to the layer of its
+     * parent. Nothing is copied, so the cost of resolving a folder does not depend on what its ancestors define.
+     */
+    private static PropertyLayer resolveFolder(AbstractFolder<?> folder, ResolutionMetrics.Walk walk) {
+        String fullName = folder.getFullName();
+        PropertyLayer cached = PropertiesCache.get(fullName);
+        if (cached != null) {
+            // Dropped before any folder it was resolved from publishes new properties, so it is always current.
+            LOGGER.log(Level.FINEST, "2. Found cached folder properties for: {0}\n", fullName);
+            if (walk != null) {
+                walk.cached();
+            }
+            return cached;
+        }
+        long epoch = PropertiesCache.epoch();
+        LOGGER.log(Level.FINEST, "2. Searching for folder properties in: {0}\n", folder.getDisplayName());
+        // Read the table once, so that the layer holds a single snapshot of it.
+        PropertyTable table = tableOf(folder);
+        LOGGER.log(Level.FINER, "3. Found {0} folder properties in {1}\n", new Object[] {
+            table.size(), folder.getDisplayName()
+        });
+        // Properties already defined in a sub-folder take precedence over those inherited from its ancestors.
+        // A sealed folder inherits nothing, so its ancestors are not even walked.
+        PropertyLayer parent = isSealed(folder) ? PropertyLayer.EMPTY : resolve(folder.getParent(), walk);
+        PropertyLayer resolved = new PropertyLayer(fullName, table, parent);
+        if (walk != null) {
+            count(walk, resolved);
+        }
+        PropertiesCache.put(fullName, resolved, epoch);
+        return resolved;
+    }
+
+    /**
+     * Tells whether the items of a folder inherit nothing from its ancestors.
+     */
+    static boolean isSealed(AbstractFolder<?> folder) {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        return folderProperties != null && folderProperties.isSealed();
+    }
+
+    private static PropertyTable tableOf(AbstractFolder<?> folder) {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        return folderProperties == null ? PropertyTable.EMPTY : folderProperties.getTable();
+    }
+
+    /**
+     * Counts the keys a new layer adds and the definitions it shadows, either within its own table or in its
+     * ancestors, where each key its table shares with them counts once however many of them define it.
+     */
+    private static void count(ResolutionMetrics.Walk walk, PropertyLayer layer) {
+        PropertyTable table = layer.getTable();
+        PropertyLayer parent = layer.getParent();
+        int merged = 0;
+        int shadowed = 0;
+        for (int i = 0; i < table.size(); i++) {
+            String key = table.getKey(i);
+            if (key == null || table.getValue(i) == null) {
+                continue;
+            }
+            if (table.indexOf(key) != i || parent.get(key) != null) {
+                shadowed++;
+            } else {
+                merged++;
+            }
+        }
+        walk.folder(merged, shadowed);
     }
 }
@@ -0,0 +1,180 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import hudson.EnvVars;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.AtomicFileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * A reference to the properties a build got from its folders, which is much smaller to serialize than the properties
+ * themselves.
+ * It names the nearest folder, the session and the generations of the tables the properties were resolved from and
+ * the filter they were selected with. As long as the folders still hold those tables, the properties are resolved
+ * again from the controller's cache. Otherwise, for instance once the controller restarted, they are read from a copy
+ * stored in the directory of the build, which is written once per snapshot, the first time the reference is
+ * serialized.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesSnapshot implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesSnapshot.class.getName());
+
+    private final String session;
+    private final String run;
+    private final String folder;
+    private final long[] generations;
+    private final String include;
+    private final String exclude;
+
+    private PropertiesSnapshot(String run, String folder, long[] generations, String include, String exclude) {
+        this.session = PropertyTable.SESSION;
+        this.run = run;
+        this.folder = folder;
+        this.generations = generations;
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    /**
+     * Refers to the properties a build selected from a layer.
+     *
+     * @param run The build.
+     * @param layer The layer the properties were selected from.
+     * @param include The patterns of the selected keys, if any.
+     * @param exclude The patterns of the keys left out, if any.
+     * @return The reference, or {@code null} if the build is not in a folder.
+     */
+    public static PropertiesSnapshot of(Run<?, ?> run, PropertyLayer layer, String include, String exclude) {
+        if (layer.getFolder() == null) {
+            return null;
+        }
+        return new PropertiesSnapshot(
+                run.getExternalizableId(), layer.getFolder(), layer.getGenerations(), include, exclude);
+    }
+
+    /**
+     * Makes sure a copy of the properties is stored with the build, so they can be read even after the folders
+     * change.
+     *
+     * @param properties The properties this snapshot refers to.
+     * @return Whether the copy is stored, so that the properties need not be serialized.
+     */
+    public boolean store(Map<String, String> properties) {
+        File file = getFile();
+        if (file == null) {
+            return false;
+        }
+        if (file.isFile()) {
+            return true;
+        }
+        try {
+            Files.createDirectories(file.toPath().getParent());
+            AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                PropertiesFormat.PROPERTIES.write(properties, writer);
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not store the folder properties of " + run + " in " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the properties this snapshot refers to, from the folders if they still hold the same tables, or else
+     * from the copy stored with the build.
+     *
+     * @return The properties.
+     * @throws IOException If the folders changed and the copy cannot be read.
+     */
+    public EnvVars load() throws IOException {
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            AbstractFolder<?> item = PropertyTable.SESSION.equals(session)
+                    ? Jenkins.get().getItemByFullName(folder, AbstractFolder.class)
+                    : null;
+            if (item != null) {
+                PropertyLayer layer = PropertiesLoader.resolve(item);
+                if (Arrays.equals(generations, layer.getGenerations())) {
+                    return new EnvVars(PropertiesLoader.select(layer, PropertyFilter.compile(include, exclude)));
+                }
+            }
+        }
+        File file = getFile();
+        if (file == null || !file.isFile()) {
+            throw new IOException("The folder properties of " + run + " changed and no copy of them was stored");
+        }
+        LOGGER.log(Level.FINE, "Reading the folder properties of {0} from {1}", new Object[] {run, file});
+        EnvVars properties = new EnvVars();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (StringProperty property : PropertiesFormat.PROPERTIES.read(reader)) {
+                properties.put(property.getKey(), property.getValue());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Names the copy after the session and a digest of the generations and the filter, so that every block using the
+     * same snapshot shares it, and no snapshot reuses a copy made for another one, e.g. by a build resumed after a
+     * restart, as the generations start again with every session. The name has the same length however deep the
+     * folder is.
+     */
+    private File getFile() {
+        Run<?, ?> build;
+        // Whatever the user the program is saved or resumed as.
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            build = Run.fromExternalizableId(run);
+        }
+        if (build == null) {
+            return null;
+        }
+        String name = session + "-" + digest(generations, include, exclude) + ".properties";
+        return new File(new File(build.getRootDir(), "folder-properties"), name);
+    }
+
+    /**
+     * Digests the generations of the tables and the patterns of a filter, the generations prefixed with their count
+     * and the patterns with their length so that no two snapshots are encoded alike, with a hash long enough that they
+     * do not collide either.
+     */
+    static String digest(long[] generations, String include, String exclude) {
+        StringBuilder encoded = new StringBuilder().append(generations.length).append(':');
+        for (long generation : generations) {
+            encoded.append(generation).append(',');
+        }
+        encoded.append(';');
+        for (String patterns : new String[] {include, exclude}) {
+            encoded.append(patterns == null ? "-" : patterns.length() + ":" + patterns).append(';');
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Util.toHexString(sha256.digest(encoded.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
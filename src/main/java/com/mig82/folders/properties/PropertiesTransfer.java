@@ -0,0 +1,229 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports and exports the properties of folders in bulk.
+ * An import works out the new properties of every folder it touches and checks that the user may configure all of
+ * them before changing any, then saves each changed folder exactly once. If a folder cannot be saved, those already
+ * changed get their previous properties back before the error is reported.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesTransfer {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesTransfer.class.getName());
+
+    /**
+     * How imported properties are applied to those a folder already has.
+     */
+    public enum Mode {
+        /**
+         * Imported properties replace those with the same key and the others are appended.
+         * Applied to a subtree, only the sub-folders which already define a key get its new value.
+         */
+        MERGE,
+        /**
+         * Imported properties replace all the properties of the folder. Cannot be applied to a subtree.
+         */
+        REPLACE,
+        /**
+         * Properties with the same keys as the imported ones are removed, whatever their values.
+         */
+        REMOVE;
+
+        public static Mode forName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown mode: " + name, e);
+            }
+        }
+    }
+
+    private PropertiesTransfer() {}
+
+    /**
+     * Imports properties into a folder and, optionally, into all of its sub-folders.
+     *
+     * @param folder The folder to import the properties into.
+     * @param properties The imported properties. If a key is repeated, its last value is the one imported.
+     * @param mode How to apply the imported properties.
+     * @param subtree Whether to also apply them to all the sub-folders of the folder.
+     * @return The number of folders which were changed.
+     * @throws IOException If a folder could not be saved, in which case those already changed are changed back.
+     * @throws IllegalArgumentException If a {@link Mode#REPLACE} is applied to a subtree.
+     */
+    public static int importProperties(
+            AbstractFolder<?> folder, List<StringProperty> properties, Mode mode, boolean subtree) throws IOException {
+        if (subtree && mode == Mode.REPLACE) {
+            throw new IllegalArgumentException("Properties cannot replace those of a whole subtree");
+        }
+        folder.checkPermission(Item.CONFIGURE);
+        PropertyTable imported = PropertyTable.of(lastDefinitions(properties));
+
+        Map<AbstractFolder<?>, PropertyTable> changes = new LinkedHashMap<>();
+        plan(changes, folder, imported, mode, false);
+        if (subtree) {
+            for (AbstractFolder<?> descendant : folder.getAllItems(AbstractFolder.class)) {
+                plan(changes, descendant, imported, mode, true);
+            }
+        }
+        // Check every permission before changing anything, so that the import applies to all folders or to none.
+        for (AbstractFolder<?> changed : changes.keySet()) {
+            changed.checkPermission(Item.CONFIGURE);
+        }
+        Map<AbstractFolder<?>, PropertyTable> previous = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<AbstractFolder<?>, PropertyTable> change : changes.entrySet()) {
+                // Remembered first, as a folder which cannot be saved still holds its new properties.
+                previous.put(change.getKey(), getTable(change.getKey()));
+                apply(change.getKey(), change.getValue());
+            }
+        } catch (IOException e) {
+            rollBack(previous, e);
+            throw e;
+        }
+        LOGGER.log(Level.FINE, "Imported {0} properties into {1} folders under {2}", new Object[] {
+            imported.size(), changes.size(), folder.getFullName()
+        });
+        return changes.size();
+    }
+
+    /**
+     * Exports the properties of a folder.
+     *
+     * @param folder The folder whose properties to export.
+     * @param effective Whether to export the properties the jobs in the folder inherit, including those defined by
+     *                  its ancestors, rather than only those defined by the folder itself. Those defined by an
+     *                  ancestor whose properties the user may not see are left out.
+     * @return The keys and values of the properties, in order.
+     */
+    public static Map<String, String> exportProperties(AbstractFolder<?> folder, boolean effective) {
+        folder.checkPermission(Item.EXTENDED_READ);
+        Map<String, String> exported = new LinkedHashMap<>();
+        if (effective) {
+            // Sorted like the EnvVars the jobs get.
+            Map<String, String> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            // Permission on the folder does not extend to its ancestors, which must each grant it themselves.
+            Set<String> visible = new HashSet<>();
+            ItemGroup<?> group = folder;
+            while (group instanceof AbstractFolder<?> ancestor) {
+                if (ancestor.hasPermission(Item.READ) && ancestor.hasPermission(Item.EXTENDED_READ)) {
+                    visible.add(ancestor.getFullName());
+                }
+                group = ancestor.getParent();
+            }
+            PropertyLayer layer = PropertiesLoader.resolve(folder);
+            for (Map.Entry<String, String> entry : layer.asMap().entrySet()) {
+                if (visible.contains(layer.findSource(entry.getKey()).getFolder())) {
+                    sorted.put(entry.getKey(), entry.getValue());
+                }
+            }
+            exported.putAll(sorted);
+        } else {
+            PropertyTable table = getTable(folder);
+            for (int i = 0; i < table.size(); i++) {
+                String key = table.getKey(i);
+                // Skip the properties shadowed by an earlier one with the same key.
+                if (key != null && table.indexOf(key) == i) {
+                    String value = table.getValue(i);
+                    exported.put(key, value == null ? "" : value);
+                }
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * Leaves out the properties read from a file, which are neither exported nor replaced by an import.
+     */
+    private static PropertyTable getTable(AbstractFolder<?> folder) {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        return folderProperties == null ? PropertyTable.EMPTY : folderProperties.getInlineTable();
+    }
+
+    /**
+     * Keeps the last value of each key, at the position of its first definition.
+     */
+    private static List<StringProperty> lastDefinitions(List<StringProperty> properties) {
+        Map<String, StringProperty> definitions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<StringProperty> ordered = new ArrayList<>();
+        for (StringProperty property : properties) {
+            String key = property.getKey();
+            if (key == null || key.trim().isEmpty()) {
+                throw new IllegalArgumentException(Messages.string_property_name_validation());
+            }
+            StringProperty previous = definitions.put(key, property);
+            if (previous == null) {
+                ordered.add(property);
+            } else {
+                ordered.set(ordered.indexOf(previous), property);
+            }
+        }
+        return ordered;
+    }
+
+    private static void plan(
+            Map<AbstractFolder<?>, PropertyTable> changes,
+            AbstractFolder<?> folder,
+            PropertyTable imported,
+            Mode mode,
+            boolean descendant) {
+        PropertyTable current = getTable(folder);
+        PropertyTable updated;
+        if (mode == Mode.MERGE) {
+            updated = current.merge(imported, descendant);
+        } else if (mode == Mode.REMOVE) {
+            updated = current.remove(imported);
+        } else {
+            updated = imported;
+        }
+        // Folders which already hold the imported properties are neither saved nor recorded as changed.
+        if (updated != current && !updated.contentEquals(current)) {
+            changes.put(folder, updated);
+        }
+    }
+
+    /**
+     * Gives back their previous properties to the folders an import changed before one of them could not be saved.
+     * A folder which cannot be saved again keeps its previous properties in memory, but is left changed on disk.
+     */
+    private static void rollBack(Map<AbstractFolder<?>, PropertyTable> previous, IOException failure) {
+        for (Map.Entry<AbstractFolder<?>, PropertyTable> change : previous.entrySet()) {
+            try {
+                apply(change.getKey(), change.getValue());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not undo the import into " + change.getKey().getFullName(), e);
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private static void apply(AbstractFolder<?> folder, PropertyTable table) throws IOException {
+        FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+        if (folderProperties == null) {
+            folderProperties = new FolderProperties<>();
+            folderProperties.replaceTable(table);
+            // Adding the property saves the folder.
+            folder.addProperty(folderProperties);
+        } else {
+            folderProperties.replaceTable(table);
+            folder.save();
+        }
+    }
+}
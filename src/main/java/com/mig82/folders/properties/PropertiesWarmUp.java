@@ -0,0 +1,265 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Resolves the properties of folders ahead of the builds which need them, so that the first wave of builds after a
+ * restart does not resolve them all at once against a cold cache.
+ * It is off by default. With {@code -Dcom.mig82.folders.properties.PropertiesWarmUp.mode=all} every folder is
+ * resolved once all jobs are loaded, in parallel, before Jenkins finishes starting up. With {@code queued} only the
+ * folders of the jobs in the queue are resolved then, and those of every job entering the queue afterwards are
+ * resolved in the background while it waits. The number of threads used is bounded by
+ * {@code -Dcom.mig82.folders.properties.PropertiesWarmUp.parallelism}, which defaults to half the processors.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesWarmUp {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertiesWarmUp.class.getName());
+
+    /**
+     * Which folders to resolve ahead of their builds.
+     */
+    public enum Mode {
+        /**
+         * None.
+         */
+        NONE,
+        /**
+         * Every folder, at startup.
+         */
+        ALL,
+        /**
+         * The folders of the jobs in the queue.
+         */
+        QUEUED;
+
+        static Mode forName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Unknown folder properties warm-up mode {0}, not warming up", name);
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Not final so it can be changed from the script console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static Mode MODE =
+            Mode.forName(SystemProperties.getString(PropertiesWarmUp.class.getName() + ".mode", "none"));
+
+    /**
+     * The maximum number of threads resolving folders at once. Not final so it can be changed from the script console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static int PARALLELISM = SystemProperties.getInteger(
+            PropertiesWarmUp.class.getName() + ".parallelism",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * The folders a single task resolves before it stops splitting its work with other threads.
+     */
+    private static final int BATCH = 16;
+
+    /**
+     * The pool warming up the folders of queued jobs in the background, created on first use.
+     */
+    private static ForkJoinPool background;
+
+    private PropertiesWarmUp() {}
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED, fatal = false)
+    public static void warmUpOnStartup() throws InterruptedException {
+        if (MODE == Mode.NONE) {
+            return;
+        }
+        List<AbstractFolder<?>> folders;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            if (MODE == Mode.ALL) {
+                folders = new ArrayList<>();
+                for (AbstractFolder<?> folder : Jenkins.get().allItems(AbstractFolder.class)) {
+                    folders.add(folder);
+                }
+            } else {
+                Set<AbstractFolder<?>> queued = new LinkedHashSet<>();
+                for (Queue.Item item : Jenkins.get().getQueue().getItems()) {
+                    AbstractFolder<?> folder = getFolder(item);
+                    if (folder != null) {
+                        queued.add(folder);
+                    }
+                }
+                folders = new ArrayList<>(queued);
+            }
+        }
+        warmUp(folders, PARALLELISM);
+    }
+
+    /**
+     * Resolves the properties of some folders in parallel and waits until they are all cached.
+     *
+     * @param folders The folders to resolve.
+     * @param parallelism The maximum number of threads to use.
+     * @return The number of folders resolved.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    static int warmUp(Collection<AbstractFolder<?>> folders, int parallelism) throws InterruptedException {
+        if (folders.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        // Resolve the shallowest folders first, so that deeper ones mostly find their parents already cached.
+        List<AbstractFolder<?>> sorted = new ArrayList<>(folders);
+        sorted.sort(Comparator.comparingInt(PropertiesWarmUp::depth));
+        LOGGER.log(Level.INFO, "Warming up the properties of {0} folders with {1} threads", new Object[] {
+            sorted.size(), parallelism
+        });
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.submit(new WarmUpTask(sorted, 0, sorted.size(), new Progress(sorted.size()))).get();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Failed to warm up folder properties", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        LOGGER.log(Level.INFO, "Warmed up the properties of {0} folders in {1} ms", new Object[] {
+            sorted.size(), (System.nanoTime() - start) / 1_000_000
+        });
+        return sorted.size();
+    }
+
+    private static int depth(AbstractFolder<?> folder) {
+        int depth = 0;
+        ItemGroup<?> parent = folder.getParent();
+        while (parent instanceof Item item) {
+            depth++;
+            parent = item.getParent();
+        }
+        return depth;
+    }
+
+    /**
+     * Finds the folder a queued job is in, if it is in one which is not resolved yet.
+     */
+    private static AbstractFolder<?> getFolder(Queue.Item item) {
+        if (item.task.getOwnerTask() instanceof Item owner
+                && owner.getParent() instanceof AbstractFolder<?> folder
+                && PropertiesCache.get(folder.getFullName()) == null) {
+            return folder;
+        }
+        return null;
+    }
+
+    private static synchronized ForkJoinPool getBackground() {
+        if (background == null) {
+            background = new ForkJoinPool(Math.max(1, PARALLELISM));
+        }
+        return background;
+    }
+
+    /**
+     * Logs how many folders are resolved every tenth of the way.
+     */
+    private static final class Progress {
+        private final int total;
+        private final AtomicInteger done = new AtomicInteger();
+
+        Progress(int total) {
+            this.total = total;
+        }
+
+        void increment() {
+            int count = done.incrementAndGet();
+            if (total >= 10 && count % (total / 10) == 0) {
+                LOGGER.log(Level.INFO, "Warmed up the properties of {0}/{1} folders", new Object[] {count, total});
+            }
+        }
+    }
+
+    /**
+     * Resolves a range of folders, splitting it with idle threads of the pool.
+     */
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "Never serialized")
+    private static final class WarmUpTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final List<AbstractFolder<?>> folders;
+        private final int from;
+        private final int to;
+        private final Progress progress;
+
+        WarmUpTask(List<AbstractFolder<?>> folders, int from, int to, Progress progress) {
+            this.folders = folders;
+            this.from = from;
+            this.to = to;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        PropertiesLoader.resolve(folders.get(i));
+                    } catch (RuntimeException e) {
+                        // One broken folder must not stop the others from being warmed up.
+                        LOGGER.log(Level.WARNING, "Failed to warm up the properties of " + folders.get(i), e);
+                    }
+                    progress.increment();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new WarmUpTask(folders, from, middle, progress), new WarmUpTask(folders, middle, to, progress));
+            }
+        }
+    }
+
+    /**
+     * Resolves the folders of jobs as they enter the queue, while they wait for an executor.
+     */
+    @Extension
+    public static class QueueListenerImpl extends QueueListener {
+
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            if (MODE != Mode.QUEUED) {
+                return;
+            }
+            AbstractFolder<?> folder = getFolder(wi);
+            if (folder != null) {
+                // Never resolve while holding the queue lock.
+                getBackground().execute(() -> PropertiesLoader.resolve(folder));
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.mig82.folders.properties;
+
+import hudson.Util;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the folder properties a job gets by key, so that it does not inherit every property of its ancestors when
+ * it only needs a few.
+ * Patterns are separated by commas or whitespace. In a pattern {@code *} matches any characters and {@code ?} any
+ * single one, so {@code DEPLOY_*} selects the keys starting with {@code DEPLOY_}. Just like resolution, patterns
+ * ignore the case of keys. A key is selected if it matches one of the included patterns, or if there are none, and
+ * none of the excluded ones.
+ * Patterns are compiled once into a set of exact keys, a list of prefixes and a single regular expression for the
+ * rest, so that matching a key is cheap whatever the number of patterns.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertyFilter {
+
+    /**
+     * The filter selecting every property.
+     */
+    public static final PropertyFilter ALL = new PropertyFilter(null, null);
+
+    private static final Pattern SEPARATORS = Pattern.compile("[,\\s]+");
+
+    private final Patterns include;
+    private final Patterns exclude;
+
+    private PropertyFilter(Patterns include, Patterns exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    /**
+     * Compiles a filter.
+     *
+     * @param include The patterns of the keys to select, or {@code null} to select all keys but the excluded ones.
+     * @param exclude The patterns of the keys to leave out, or {@code null} to leave none out.
+     * @return The filter, which is {@link #ALL} if there are no patterns at all.
+     */
+    public static PropertyFilter compile(String include, String exclude) {
+        Patterns included = Patterns.compile(include);
+        Patterns excluded = Patterns.compile(exclude);
+        return included == null && excluded == null ? ALL : new PropertyFilter(included, excluded);
+    }
+
+    /**
+     * @return Whether this filter selects every property, so that callers can skip it.
+     */
+    public boolean isAll() {
+        return include == null && exclude == null;
+    }
+
+    /**
+     * @param key The key of a property.
+     * @return Whether the property is selected.
+     */
+    public boolean matches(String key) {
+        return (include == null || include.matches(key)) && (exclude == null || !exclude.matches(key));
+    }
+
+    /**
+     * A compiled list of patterns.
+     */
+    private static final class Patterns {
+        private final Set<String> exact;
+        private final String[] prefixes;
+        private final Pattern globs;
+
+        private Patterns(Set<String> exact, String[] prefixes, Pattern globs) {
+            this.exact = exact;
+            this.prefixes = prefixes;
+            this.globs = globs;
+        }
+
+        static Patterns compile(String patterns) {
+            patterns = Util.fixEmptyAndTrim(patterns);
+            if (patterns == null) {
+                return null;
+            }
+            Set<String> exact = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            List<String> prefixes = new ArrayList<>();
+            StringBuilder globs = new StringBuilder();
+            for (String pattern : SEPARATORS.split(patterns)) {
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                int wildcard = indexOfWildcard(pattern);
+                if (wildcard < 0) {
+                    exact.add(pattern);
+                } else if (wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*') {
+                    prefixes.add(pattern.substring(0, wildcard));
+                } else {
+                    if (globs.length() > 0) {
+                        globs.append('|');
+                    }
+                    appendGlob(globs, pattern);
+                }
+            }
+            return new Patterns(
+                    exact,
+                    prefixes.toArray(new String[0]),
+                    globs.length() == 0
+                            ? null
+                            : Pattern.compile(globs.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        }
+
+        private static int indexOfWildcard(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                if (pattern.charAt(i) == '*' || pattern.charAt(i) == '?') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void appendGlob(StringBuilder regex, String glob) {
+            int literal = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (i > literal) {
+                        regex.append(Pattern.quote(glob.substring(literal, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                    literal = i + 1;
+                }
+            }
+            if (literal < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(literal)));
+            }
+        }
+
+        boolean matches(String key) {
+            if (exact.contains(key)) {
+                return true;
+            }
+            for (String prefix : prefixes) {
+                if (key.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    return true;
+                }
+            }
+            return globs != null && globs.matcher(key).matches();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.mig82.folders.properties;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The changes made to the properties of a folder, kept in an append-only log in the directory of the folder, so that
+ * what the folder defined at any point in time can be told without keeping a copy of its whole configuration.
+ * Each line of the log records one key being set or removed, or the folder being sealed or unsealed, with the time and
+ * the user. The keys are those the folder defines, whether they were added to it, read from its file or shared. The
+ * log starts with the properties the folder held before its first recorded change, dated from when its configuration
+ * was last saved, so what the folder defined before then is unknown.
+ * The log is read once, the first time it is needed, into a list of changes in the order they were made, and an index
+ * of the positions of the changes to each key, so that the value of a key at a point in time is found by a binary
+ * search of its own changes.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertyHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertyHistory.class.getName());
+
+    /**
+     * The name of the log in the directory of the folder.
+     */
+    public static final String FILE_NAME = "folder-properties-history.log";
+
+    /**
+     * What a change did.
+     */
+    public enum Type {
+        SET,
+        REMOVE,
+        SEAL,
+        UNSEAL
+    }
+
+    /**
+     * A change made to a folder.
+     */
+    public static final class Change {
+        private final long time;
+        private final String user;
+        private final Type type;
+        private final String key;
+        private final String value;
+
+        Change(long time, String user, Type type, String key, String value) {
+            this.time = time;
+            this.user = user;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * @return When the change was made, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return The id of the user who made the change.
+         */
+        public String getUser() {
+            return user;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return The key which was set or removed, or {@code null} if the folder was sealed or unsealed.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The value the key was set to, or {@code null} unless it was set.
+         */
+        public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Every change, in the order they were made.
+     */
+    private final List<Change> changes = new ArrayList<>();
+
+    /**
+     * The positions in {@link #changes} of the changes to each key, ignoring case.
+     */
+    private final Map<String, List<Integer>> byKey = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * The positions in {@link #changes} of the changes sealing or unsealing the folder.
+     */
+    private final List<Integer> seals = new ArrayList<>();
+
+    private PropertyHistory() {}
+
+    /**
+     * Reads the log of a folder.
+     *
+     * @param file The log.
+     * @return The changes it records, which are none if it does not exist yet or cannot be read.
+     */
+    static PropertyHistory load(File file) {
+        PropertyHistory history = new PropertyHistory();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Change change = parse(line);
+                if (change != null) {
+                    history.add(change);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Not changed since the log was introduced.
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the history of folder properties " + file, e);
+        }
+        return history;
+    }
+
+    /**
+     * Makes a history which is not backed by a log.
+     *
+     * @param changes The changes, in the order they were made.
+     * @return The history.
+     */
+    static PropertyHistory of(List<Change> changes) {
+        PropertyHistory history = new PropertyHistory();
+        for (Change change : changes) {
+            history.add(change);
+        }
+        return history;
+    }
+
+    private void add(Change change) {
+        int index = changes.size();
+        changes.add(change);
+        if (change.key != null) {
+            byKey.computeIfAbsent(change.key, k -> new ArrayList<>()).add(index);
+        } else {
+            seals.add(index);
+        }
+    }
+
+    /**
+     * Appends changes to the log, and to this history.
+     *
+     * @param file The log.
+     * @param appended The changes, made after every change already recorded.
+     */
+    synchronized void append(File file, List<Change> appended) {
+        if (appended.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toPath().getParent());
+            try (Writer writer =
+                    new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                for (Change change : appended) {
+                    writer.write(format(change));
+                }
+            }
+        } catch (IOException e) {
+            // The properties are still saved, only their history misses the changes.
+            LOGGER.log(Level.WARNING, "Could not record the history of folder properties in " + file, e);
+        }
+        for (Change change : appended) {
+            add(change);
+        }
+    }
+
+    /**
+     * @return The time to record the next change at, which is never before the last one, so that the changes stay
+     *         sorted by time even if the clock goes back.
+     */
+    synchronized long now() {
+        long now = System.currentTimeMillis();
+        return changes.isEmpty() ? now : Math.max(now, changes.get(changes.size() - 1).time);
+    }
+
+    /**
+     * @return Whether no change was recorded yet.
+     */
+    public synchronized boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * @return When the first change was recorded, before which the properties of the folder are unknown, or
+     *         {@link Long#MAX_VALUE} if none was.
+     */
+    public synchronized long getStart() {
+        return changes.isEmpty() ? Long.MAX_VALUE : changes.get(0).time;
+    }
+
+    /**
+     * Returns the properties the folder defined at a point in time.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The last change setting each key which was not removed since, by key, or {@code null} if the history
+     *         does not go back that far.
+     */
+    public synchronized Map<String, Change> getPropertiesAt(long time) {
+        if (time < getStart()) {
+            return null;
+        }
+        Map<String, Change> properties = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (List<Integer> positions : byKey.values()) {
+            Change change = lastAt(positions, time);
+            if (change != null && change.type == Type.SET) {
+                properties.put(change.key, change);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the change which set a key to the value it had at a point in time.
+     *
+     * @param key The key, ignoring case.
+     * @param time The time, in milliseconds since the epoch.
+     * @return The change, or {@code null} if the key was not defined then or the history does not go back that far.
+     */
+    public synchronized Change getAt(String key, long time) {
+        if (time < getStart()) {
+            return null;
+        }
+        List<Integer> positions = byKey.get(key);
+        Change change = positions == null ? null : lastAt(positions, time);
+        return change != null && change.type == Type.SET ? change : null;
+    }
+
+    /**
+     * @param time The time, in milliseconds since the epoch.
+     * @return Whether the folder was sealed at that time.
+     */
+    public synchronized boolean isSealedAt(long time) {
+        Change change = lastAt(seals, time);
+        return change != null && change.type == Type.SEAL;
+    }
+
+    /**
+     * Returns the changes made in a period of time.
+     *
+     * @param from The start of the period, included, in milliseconds since the epoch.
+     * @param to The end of the period, excluded.
+     * @return The changes, in the order they were made.
+     */
+    public synchronized List<Change> getChanges(long from, long to) {
+        int start = countUpTo(from - 1);
+        int end = countUpTo(to - 1);
+        return start >= end ? Collections.emptyList() : new ArrayList<>(changes.subList(start, end));
+    }
+
+    /**
+     * @return The number of changes made at or before a time, as they are sorted by time.
+     */
+    private int countUpTo(long time) {
+        int low = 0;
+        int high = changes.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (changes.get(middle).time <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the last of some changes made at or before a time.
+     */
+    private Change lastAt(List<Integer> positions, long time) {
+        int low = 0;
+        int high = positions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (changes.get(positions.get(middle)).time <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == 0 ? null : changes.get(positions.get(low - 1));
+    }
+
+    /**
+     * Computes the changes turning some properties into others.
+     *
+     * @param previous The properties before the change, or {@code null} to record all the new ones as set.
+     * @param next The properties after the change.
+     * @param time When the change was made.
+     * @param user Who made it.
+     * @return A change for each key which was set to another value or removed.
+     */
+    static List<Change> diff(PropertyTable previous, PropertyTable next, long time, String user) {
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < next.size(); i++) {
+            String key = next.getKey(i);
+            // Only the first property with a key is ever used.
+            if (key == null || next.indexOf(key) != i) {
+                continue;
+            }
+            int index = previous == null ? -1 : previous.indexOf(key);
+            // A key whose case changed is set again, as that is the name the variable gets.
+            if (index < 0
+                    || !key.equals(previous.getKey(index))
+                    || !Objects.equals(next.getValue(i), previous.getValue(index))) {
+                changes.add(new Change(time, user, Type.SET, key, next.getValue(i)));
+            }
+        }
+        if (previous != null) {
+            for (int i = 0; i < previous.size(); i++) {
+                String key = previous.getKey(i);
+                if (key != null && previous.indexOf(key) == i && next.indexOf(key) < 0) {
+                    changes.add(new Change(time, user, Type.REMOVE, key, null));
+                }
+            }
+        }
+        return changes;
+    }
+
+    static Change seal(boolean sealed, long time, String user) {
+        return new Change(time, user, sealed ? Type.SEAL : Type.UNSEAL, null, null);
+    }
+
+    /**
+     * Writes a change as a line of tab separated fields: the time, the user, the type, and then the key and the value
+     * if there are any.
+     */
+    private static String format(Change change) {
+        StringBuilder line = new StringBuilder()
+                .append(change.time)
+                .append('\t')
+                .append(escape(change.user))
+                .append('\t')
+                .append(change.type);
+        if (change.key != null) {
+            line.append('\t').append(escape(change.key));
+        }
+        if (change.value != null) {
+            line.append('\t').append(escape(change.value));
+        }
+        return line.append('\n').toString();
+    }
+
+    /**
+     * @return The change a line records, or {@code null} if it cannot be read, e.g. it was cut short by a crash.
+     */
+    private static Change parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 3) {
+            return null;
+        }
+        try {
+            return new Change(
+                    Long.parseLong(fields[0]),
+                    unescape(fields[1]),
+                    Type.valueOf(fields[2]),
+                    fields.length > 3 ? unescape(fields[3]) : null,
+                    fields.length > 4 ? unescape(fields[4]) : null);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Skipping a line of the history of folder properties: " + line, e);
+            return null;
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder escaped = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder unescaped = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i);
+                c = c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+}
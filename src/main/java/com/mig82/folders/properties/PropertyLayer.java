@@ -0,0 +1,262 @@
+package com.mig82.folders.properties;
+
+import hudson.Util;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The properties inherited by the items of a folder, as a persistent map made of one immutable layer per folder
+ * chained to the layer of its parent.
+ * A layer only holds the {@link PropertyTable} of its own folder, so resolving a folder whose parent is already
+ * resolved allocates one small object, and every job in the folder shares it. Nothing is flattened either: the view
+ * of a layer walks up the chain, skipping the keys a nearer layer defines, so sibling folders share the layers of their
+ * ancestors rather than copies of what they inherit. Just like {@link hudson.EnvVars}, keys ignore case, and a key
+ * defined by a folder shadows the same key defined by its ancestors or later in its own table.
+ * Properties without a value are left out.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertyLayer {
+
+    /**
+     * The layer of the items which are not in any folder.
+     */
+    public static final PropertyLayer EMPTY = new PropertyLayer(null, PropertyTable.EMPTY, null);
+
+    private final String folder;
+    private final PropertyTable table;
+    private final PropertyLayer parent;
+
+    /**
+     * The number of distinct properties visible through this layer, counted on first use, or -1.
+     */
+    private volatile int size = -1;
+
+    private volatile ExpansionPlan plan;
+
+    /**
+     * @param folder The full name of the folder defining the properties of this layer.
+     * @param table The properties the folder defines.
+     * @param parent The layer of the parent folder.
+     */
+    PropertyLayer(String folder, PropertyTable table, PropertyLayer parent) {
+        this.folder = folder;
+        this.table = table;
+        this.parent = parent;
+    }
+
+    /**
+     * @return The full name of the folder this layer belongs to, or {@code null} for {@link #EMPTY}.
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return The properties defined by the folder of this layer.
+     */
+    public PropertyTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return The layer of the nearest ancestor folder, or {@code null} for {@link #EMPTY}.
+     */
+    public PropertyLayer getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the generation vector of the snapshot this layer was resolved from.
+     * Two layers with equal vectors hold the same properties, and a layer whose vector differs from that of a folder's
+     * current tables is stale.
+     *
+     * @return The generation of the table of each layer, from this one up to the topmost.
+     */
+    public long[] getGenerations() {
+        int depth = 0;
+        for (PropertyLayer layer = this; layer != null; layer = layer.parent) {
+            depth++;
+        }
+        long[] generations = new long[depth];
+        int i = 0;
+        for (PropertyLayer layer = this; layer != null; layer = layer.parent) {
+            generations[i++] = layer.table.getGeneration();
+        }
+        return generations;
+    }
+
+    /**
+     * Returns a tag which changes whenever the properties visible through this layer may have changed, to answer
+     * conditional requests without resolving them again.
+     *
+     * @return A digest of the folders and generations of the layers, and of the run of the controller they belong to.
+     */
+    public String getETag() {
+        StringBuilder version = new StringBuilder(PropertyTable.SESSION);
+        for (PropertyLayer layer = this; layer != null && layer.folder != null; layer = layer.parent) {
+            version.append('/').append(layer.folder).append('@').append(layer.table.getGeneration());
+        }
+        return '"' + Util.getDigestOf(version.toString()) + '"';
+    }
+
+    /**
+     * Looks up a property, from this layer up to the topmost one.
+     *
+     * @param key The key, ignoring case.
+     * @return The value of the nearest definition, or {@code null} if there is none.
+     */
+    public String get(String key) {
+        PropertyLayer layer = findSource(key);
+        return layer == null ? null : layer.table.get(key);
+    }
+
+    /**
+     * Finds the layer a property is inherited from.
+     *
+     * @param key The key, ignoring case.
+     * @return The nearest layer defining it, or {@code null} if there is none.
+     */
+    public PropertyLayer findSource(String key) {
+        for (PropertyLayer layer = this; layer != null; layer = layer.parent) {
+            if (layer.table.get(key) != null) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of distinct properties visible through this layer.
+     */
+    public int size() {
+        int size = this.size;
+        if (size < 0) {
+            // The properties of this layer's folder, plus those it inherits which it does not shadow.
+            size = parent == null ? 0 : parent.size();
+            for (int i = 0; i < table.size(); i++) {
+                if (isDefinedAt(table, i) && (parent == null || parent.get(table.getKey(i)) == null)) {
+                    size++;
+                }
+            }
+            this.size = size;
+        }
+        return size;
+    }
+
+    /**
+     * Tells whether a property of a table is the first one defined with its key, as the others are never seen.
+     */
+    private static boolean isDefinedAt(PropertyTable table, int index) {
+        String key = table.getKey(index);
+        return key != null && table.getValue(index) != null && table.indexOf(key) == index;
+    }
+
+    /**
+     * Returns an unmodifiable view of the properties visible through this layer, without copying them.
+     * It iterates over the properties of this layer's folder first, in the order they were defined, then over those
+     * inherited from each ancestor in turn. Its lookups ignore case.
+     *
+     * @return The view.
+     */
+    public Map<String, String> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * @return The plan to expand the properties of this layer, compiled once and shared by all the builds using it.
+     */
+    public ExpansionPlan getExpansionPlan() {
+        ExpansionPlan plan = this.plan;
+        if (plan == null) {
+            plan = ExpansionPlan.compile(asMap());
+            this.plan = plan;
+        }
+        return plan;
+    }
+
+    private final class MapView extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String s ? PropertyLayer.this.get(s) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return PropertyLayer.this.size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return PropertyLayer.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterates over the properties of each layer in turn, from this one up, skipping those a nearer layer shadows.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private PropertyLayer layer = PropertyLayer.this;
+        private int index;
+        private Map.Entry<String, String> next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && layer != null) {
+                PropertyTable table = layer.table;
+                if (index < table.size()) {
+                    int i = index++;
+                    if (isDefinedAt(table, i) && !isShadowed(table.getKey(i))) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(table.getKey(i), table.getValue(i));
+                    }
+                } else {
+                    layer = layer.parent;
+                    index = 0;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> entry = next;
+            next = null;
+            return entry;
+        }
+
+        /**
+         * Tells whether a layer below the current one defines a key.
+         */
+        private boolean isShadowed(String key) {
+            for (PropertyLayer nearer = PropertyLayer.this; nearer != layer; nearer = nearer.parent) {
+                if (nearer.table.get(key) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mig82.folders.properties;
+
+import com.mig82.folders.Messages;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * A named set of properties defined once in {@link PropertySets}, which folders reference by id.
+ * It is immutable, so editing a set replaces it, and the folders referencing it can tell it changed by identity.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class PropertySet extends AbstractDescribableImpl<PropertySet> {
+
+    private final String id;
+
+    private final PropertyTable properties;
+
+    @DataBoundConstructor
+    public PropertySet(String id, List<StringProperty> properties) {
+        this.id = Util.fixEmptyAndTrim(id);
+        this.properties = PropertyTable.of(properties == null ? Collections.emptyList() : properties);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return A new array holding the properties of the set.
+     */
+    public StringProperty[] getProperties() {
+        return properties.toProperties();
+    }
+
+    /**
+     * @return The properties of the set in the {@code .properties} format, to edit them as text.
+     */
+    public String getText() {
+        return FolderProperties.toText(properties);
+    }
+
+    /**
+     * @return The table shared by all the folders referencing the set.
+     */
+    PropertyTable getTable() {
+        return properties == null ? PropertyTable.EMPTY : properties;
+    }
+
+    /**
+     * Descriptor class.
+     */
+    @Extension
+    public static class DescriptorImpl extends Descriptor<PropertySet> {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.display_property_set();
+        }
+
+        public FormValidation doCheckId(@QueryParameter String value) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return FormValidation.ok();
+            }
+            String problem = PropertySets.checkId(Util.fixEmptyAndTrim(value));
+            return problem == null ? FormValidation.ok() : FormValidation.error(problem);
+        }
+
+        /**
+         * Validates all the properties of the set in a single pass, like those of a folder edited as text.
+         */
+        public FormValidation doCheckText(@QueryParameter String value) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER) || value == null) {
+                return FormValidation.ok();
+            }
+            List<StringProperty> properties;
+            try {
+                properties = FolderProperties.parseText(value);
+            } catch (IOException | IllegalArgumentException e) {
+                return FormValidation.error(Messages.folder_properties_text_invalid(e.getMessage()));
+            }
+            return FolderProperties.DescriptorImpl.validate(properties);
+        }
+    }
+}
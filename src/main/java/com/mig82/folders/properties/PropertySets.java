@@ -0,0 +1,235 @@
+package com.mig82.folders.properties;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.mig82.folders.Messages;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Descriptor;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest2;
+
+/**
+ * The shared property sets, defined once under Manage Jenkins and referenced by id from the folders which need them,
+ * instead of each of them holding a copy of the same properties.
+ * Each set is parsed once into a {@link PropertyTable}, which every folder referencing it appends to its own
+ * properties. Saving the sets keeps the table of every set which did not change, and only publishes new properties
+ * for the folders referencing one which did, so the cached properties of the other folders are left alone.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+@Extension
+@Symbol("folderPropertySets")
+public class PropertySets extends GlobalConfiguration {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertySets.class.getName());
+
+    /**
+     * What an id may be made of, so that a folder can list several ids separated by commas or spaces.
+     */
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private volatile List<PropertySet> sets = Collections.emptyList();
+
+    /**
+     * The sets by id, built on first use after they are loaded.
+     */
+    private transient volatile Map<String, PropertySet> byId;
+
+    public PropertySets() {
+        load();
+    }
+
+    public static PropertySets get() {
+        return ExtensionList.lookupSingleton(PropertySets.class);
+    }
+
+    @NonNull
+    @Override
+    public String getDisplayName() {
+        return Messages.display_property_sets();
+    }
+
+    public List<PropertySet> getSets() {
+        List<PropertySet> sets = this.sets;
+        return sets == null ? Collections.emptyList() : sets;
+    }
+
+    /**
+     * Replaces all the sets, and publishes new properties for the folders referencing those which changed.
+     *
+     * @param sets The new sets. Of those sharing an id, only the first one is used.
+     */
+    @DataBoundSetter
+    public void setSets(List<PropertySet> sets) {
+        Set<String> changed = new HashSet<>();
+        synchronized (this) {
+            Map<String, PropertySet> previous = index();
+            List<PropertySet> kept = new ArrayList<>(sets.size());
+            for (PropertySet set : sets) {
+                PropertySet old = previous.get(set.getId());
+                // Forms submit every set again, so keep those which did not change to leave their folders alone.
+                kept.add(old != null && old.getTable().contentEquals(set.getTable()) ? old : set);
+            }
+            Map<String, PropertySet> next = index(kept);
+            for (Map.Entry<String, PropertySet> entry : previous.entrySet()) {
+                if (next.get(entry.getKey()) != entry.getValue()) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (Map.Entry<String, PropertySet> entry : next.entrySet()) {
+                if (previous.get(entry.getKey()) != entry.getValue()) {
+                    changed.add(entry.getKey());
+                }
+            }
+            this.sets = Collections.unmodifiableList(kept);
+            this.byId = next;
+            save();
+        }
+        if (!changed.isEmpty()) {
+            republish(changed);
+        }
+    }
+
+    @Override
+    public boolean configure(StaplerRequest2 req, JSONObject json) throws Descriptor.FormException {
+        Object submitted = json.opt("sets");
+        JSONArray array = new JSONArray();
+        if (submitted instanceof JSONArray several) {
+            array = several;
+        } else if (submitted instanceof JSONObject one) {
+            array.add(one);
+        }
+        List<PropertySet> sets = new ArrayList<>(array.size());
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < array.size(); i++) {
+            JSONObject set = array.getJSONObject(i);
+            String id = Util.fixEmptyAndTrim(set.optString("id"));
+            String problem = checkId(id);
+            if (problem == null && !ids.add(id)) {
+                problem = Messages.property_sets_id_duplicate(id);
+            }
+            if (problem != null) {
+                throw new Descriptor.FormException(problem, "sets");
+            }
+            List<StringProperty> properties;
+            try {
+                properties = FolderProperties.parseText(set.optString("text"));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new Descriptor.FormException(Messages.property_sets_invalid(id, e.getMessage()), "sets");
+            }
+            problem = FolderProperties.DescriptorImpl.checkKeys(properties);
+            if (problem != null) {
+                throw new Descriptor.FormException(Messages.property_sets_invalid(id, problem), "sets");
+            }
+            sets.add(new PropertySet(id, properties));
+        }
+        setSets(sets);
+        return true;
+    }
+
+    /**
+     * @return Why an id cannot be used, or {@code null} if it can.
+     */
+    static String checkId(String id) {
+        return id != null && ID.matcher(id).matches() ? null : Messages.property_sets_id_invalid(Util.fixNull(id));
+    }
+
+    /**
+     * Splits the ids a folder references.
+     *
+     * @param ids The ids, separated by commas or spaces, or {@code null}.
+     * @return The ids, in order.
+     */
+    static List<String> parseIds(String ids) {
+        List<String> parsed = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids.split("[,\\s]+")) {
+                if (!id.isEmpty()) {
+                    parsed.add(id);
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns the properties of some sets, for a folder to append them to its own.
+     *
+     * @param ids The ids of the sets, separated by commas or spaces, or {@code null}.
+     * @return The table of each set, in order, which is empty for the ids no set has.
+     */
+    static PropertyTable[] getTables(String ids) {
+        List<String> parsed = parseIds(ids);
+        if (parsed.isEmpty()) {
+            return new PropertyTable[0];
+        }
+        Map<String, PropertySet> byId = get().index();
+        PropertyTable[] tables = new PropertyTable[parsed.size()];
+        for (int i = 0; i < tables.length; i++) {
+            PropertySet set = byId.get(parsed.get(i));
+            tables[i] = set == null ? PropertyTable.EMPTY : set.getTable();
+        }
+        return tables;
+    }
+
+    /**
+     * @return Whether there is a set with an id.
+     */
+    boolean has(String id) {
+        return index().containsKey(id);
+    }
+
+    private Map<String, PropertySet> index() {
+        Map<String, PropertySet> byId = this.byId;
+        if (byId == null) {
+            byId = index(getSets());
+            this.byId = byId;
+        }
+        return byId;
+    }
+
+    private static Map<String, PropertySet> index(List<PropertySet> sets) {
+        Map<String, PropertySet> byId = new LinkedHashMap<>();
+        for (PropertySet set : sets) {
+            if (set.getId() != null) {
+                byId.putIfAbsent(set.getId(), set);
+            }
+        }
+        return Collections.unmodifiableMap(byId);
+    }
+
+    /**
+     * Publishes the properties of the folders referencing some sets again.
+     */
+    private static void republish(Set<String> ids) {
+        LOGGER.log(Level.FINE, "Republishing the folder properties of the folders using the sets {0}", ids);
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            for (AbstractFolder<?> folder : Jenkins.get().allItems(AbstractFolder.class)) {
+                FolderProperties<?> folderProperties = folder.getProperties().get(FolderProperties.class);
+                if (folderProperties != null && folderProperties.usesSets(ids)) {
+                    folderProperties.reload();
+                }
+            }
+        }
+    }
+}
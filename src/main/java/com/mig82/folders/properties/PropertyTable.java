@@ -0,0 +1,544 @@
+package com.mig82.folders.properties;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.converters.collections.AbstractCollectionConverter;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.util.RobustReflectionConverter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jenkins.util.SystemProperties;
+import jenkins.util.xstream.CriticalXStreamException;
+
+/**
+ * An immutable table of the properties defined by a folder, in the order they were defined.
+ * Keys are looked up through a hash index which, just like {@link hudson.EnvVars}, ignores case and returns the
+ * first property defined with a given key. Entries are read by position, so iterating over them allocates nothing.
+ * Keys and values are interned, so folders which repeat the same values share a single copy of them.
+ * Every table gets a generation number from a single counter when it is created, so a folder which publishes a new
+ * table can tell readers, cheaply, that what they resolved from its previous one is stale.
+ * Large tables are persisted as a single compressed block, which is only decoded the first time the table is read, so
+ * loading a folder whose jobs never run costs one array of bytes rather than an object per property.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertyTable {
+
+    /**
+     * A table without any properties.
+     */
+    public static final PropertyTable EMPTY = new PropertyTable(new String[0], new String[0]);
+
+    /**
+     * The number of properties from which a table is persisted as a compressed block rather than as one element per
+     * property, which versions of the plugin older than this one cannot read. Not final so it can be changed from the
+     * script console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static int COMPACT_THRESHOLD =
+            SystemProperties.getInteger(PropertyTable.class.getName() + ".compactThreshold", 100);
+
+    private static final Logger LOGGER = Logger.getLogger(PropertyTable.class.getName());
+
+    private static final Interner<String> INTERNER = Interners.newWeakInterner();
+
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    /**
+     * Identifies this run of the controller, as generations start over every time it starts.
+     */
+    static final String SESSION = UUID.randomUUID().toString();
+
+    /**
+     * The keys, values and index of the table, or {@code null} until they are decoded from {@link #encoded}.
+     */
+    private volatile Entries entries;
+
+    /**
+     * The compressed block the table was read from, until it is decoded.
+     */
+    private byte[] encoded;
+
+    /**
+     * The number of properties in {@link #encoded}, to tell how to persist the table without decoding it.
+     */
+    private int encodedSize;
+
+    /**
+     * The persisted block the table was read from, if it could not be read. Such a table holds no properties, but it
+     * is written back as it was read, so that saving the folder does not lose them.
+     */
+    private String unreadable;
+
+    private final long generation;
+
+    /**
+     * The arrays holding the properties of a table.
+     */
+    private static final class Entries {
+        private final String[] keys;
+        private final String[] values;
+
+        /**
+         * Open addressing index holding the position of each distinct key plus one, or zero for an empty slot.
+         */
+        private final int[] slots;
+
+        Entries(String[] keys, String[] values) {
+            this.keys = keys;
+            this.values = values;
+            int capacity = 2;
+            while (capacity < keys.length * 2) {
+                capacity <<= 1;
+            }
+            this.slots = new int[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && indexOf(keys[i]) < 0) {
+                    int slot = hash(keys[i]) & (slots.length - 1);
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & (slots.length - 1);
+                    }
+                    slots[slot] = i + 1;
+                }
+            }
+        }
+
+        int indexOf(String key) {
+            int slot = hash(key) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                int index = slots[slot] - 1;
+                if (keys[index].equalsIgnoreCase(key)) {
+                    return index;
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            return -1;
+        }
+    }
+
+    private PropertyTable(String[] keys, String[] values) {
+        this.entries = new Entries(keys, values);
+        this.generation = GENERATIONS.incrementAndGet();
+    }
+
+    private PropertyTable(Entries entries, long generation) {
+        this.entries = entries;
+        this.generation = generation;
+    }
+
+    private PropertyTable(byte[] encoded, int encodedSize) {
+        this.encoded = encoded;
+        this.encodedSize = encodedSize;
+        this.generation = GENERATIONS.incrementAndGet();
+    }
+
+    private PropertyTable(String unreadable) {
+        this.entries = EMPTY.entries;
+        this.unreadable = unreadable;
+        this.generation = GENERATIONS.incrementAndGet();
+    }
+
+    private Entries entries() {
+        Entries entries = this.entries;
+        return entries != null ? entries : decode();
+    }
+
+    private synchronized Entries decode() {
+        if (entries == null) {
+            try (DataInputStream in =
+                    new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(encoded)))) {
+                int size = in.readInt();
+                String[] keys = new String[size];
+                String[] values = new String[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = intern(readString(in));
+                    values[i] = intern(readString(in));
+                }
+                entries = new Entries(keys, values);
+                encoded = null;
+            } catch (IOException e) {
+                // Checked when it was read, so it should not happen, but keep the block to write it back as it was.
+                LOGGER.log(Level.SEVERE, "Could not decode persisted folder properties, ignoring them", e);
+                unreadable = Base64.getEncoder().encodeToString(encoded);
+                encoded = null;
+                entries = EMPTY.entries;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Checks that a compressed block holds a well formed table, without creating an object per property.
+     *
+     * @return The number of properties it holds.
+     * @throws IOException If it does not hold a table.
+     */
+    private static int check(byte[] encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(encoded)))) {
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Negative number of properties: " + size);
+            }
+            for (int i = 0; i < size * 2; i++) {
+                int length = in.readInt();
+                if (length > 0) {
+                    in.skipNBytes(length);
+                }
+            }
+            if (in.read() >= 0) {
+                throw new IOException("Unexpected data after " + size + " properties");
+            }
+            return size;
+        }
+    }
+
+    /**
+     * @return The number of properties in the table, without decoding it.
+     */
+    private synchronized int persistedSize() {
+        return entries != null ? entries.keys.length : encodedSize;
+    }
+
+    /**
+     * @return The persisted block of an unreadable table, or {@code null} if the table could be read.
+     */
+    private synchronized String getUnreadable() {
+        return unreadable;
+    }
+
+    /**
+     * @return The compressed block the table was read from, if it was not decoded since, or else a new one.
+     */
+    private synchronized byte[] encode() throws IOException {
+        if (entries == null) {
+            return encoded;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(entries.keys.length);
+            for (int i = 0; i < entries.keys.length; i++) {
+                writeString(out, entries.keys[i]);
+                writeString(out, entries.values[i]);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a table holding some properties.
+     *
+     * @param properties The properties, in the order they were defined.
+     * @return The table holding their keys and values.
+     */
+    public static PropertyTable of(List<StringProperty> properties) {
+        if (properties.isEmpty()) {
+            return EMPTY;
+        }
+        String[] keys = new String[properties.size()];
+        String[] values = new String[properties.size()];
+        for (int i = 0; i < keys.length; i++) {
+            StringProperty property = properties.get(i);
+            keys[i] = intern(property.getKey());
+            values[i] = intern(property.getValue());
+        }
+        return new PropertyTable(keys, values);
+    }
+
+    /**
+     * Creates a table holding the properties of this one followed by some more.
+     *
+     * @param properties The properties to append.
+     * @return A new table, as this one is immutable.
+     */
+    public PropertyTable append(List<StringProperty> properties) {
+        if (properties.isEmpty()) {
+            return this;
+        }
+        List<StringProperty> all = new ArrayList<>(Arrays.asList(toProperties()));
+        all.addAll(properties);
+        return of(all);
+    }
+
+    /**
+     * Creates a table where the properties of another one replace the first property with the same key, or are
+     * appended if there is none.
+     *
+     * @param updates The properties to set.
+     * @param definedOnly Whether to skip the properties whose key this table does not define.
+     * @return A new table, or this one if nothing changed.
+     */
+    public PropertyTable merge(PropertyTable updates, boolean definedOnly) {
+        Entries entries = entries();
+        List<StringProperty> merged = new ArrayList<>(Arrays.asList(toProperties()));
+        boolean changed = false;
+        for (int i = 0; i < updates.size(); i++) {
+            int index = indexOf(updates.getKey(i));
+            if (index >= 0) {
+                if (!Objects.equals(entries.values[index], updates.getValue(i))) {
+                    merged.set(index, new StringProperty(entries.keys[index], updates.getValue(i)));
+                    changed = true;
+                }
+            } else if (!definedOnly) {
+                merged.add(new StringProperty(updates.getKey(i), updates.getValue(i)));
+                changed = true;
+            }
+        }
+        return changed ? of(merged) : this;
+    }
+
+    /**
+     * Creates a table without any of the properties whose key is defined by another one.
+     *
+     * @param removals The properties whose keys to remove, regardless of their values.
+     * @return A new table, or this one if nothing changed.
+     */
+    public PropertyTable remove(PropertyTable removals) {
+        Entries entries = entries();
+        List<StringProperty> kept = new ArrayList<>(entries.keys.length);
+        for (int i = 0; i < entries.keys.length; i++) {
+            if (removals.indexOf(entries.keys[i]) < 0) {
+                kept.add(new StringProperty(entries.keys[i], entries.values[i]));
+            }
+        }
+        return kept.size() == entries.keys.length ? this : of(kept);
+    }
+
+    /**
+     * Creates a table holding the properties of this one followed by those of another one, without copying them one
+     * by one, so its lookups find the properties of this table first.
+     *
+     * @param table The properties to append.
+     * @return A new table, or this one if the other one is empty.
+     */
+    public PropertyTable concat(PropertyTable table) {
+        Entries first = entries();
+        Entries second = table.entries();
+        if (second.keys.length == 0) {
+            return this;
+        }
+        String[] keys = Arrays.copyOf(first.keys, first.keys.length + second.keys.length);
+        String[] values = Arrays.copyOf(first.values, keys.length);
+        System.arraycopy(second.keys, 0, keys, first.keys.length, second.keys.length);
+        System.arraycopy(second.values, 0, values, first.values.length, second.values.length);
+        return new PropertyTable(keys, values);
+    }
+
+    /**
+     * Creates a table sharing the properties of this one but with a newer generation, to publish a table which was
+     * created before the one it replaces.
+     *
+     * @return A new table.
+     */
+    PropertyTable restamp() {
+        return new PropertyTable(entries(), GENERATIONS.incrementAndGet());
+    }
+
+    private static String intern(String s) {
+        return s == null ? null : INTERNER.intern(s);
+    }
+
+    /**
+     * Hashes a key so that keys which only differ in case get the same hash, like
+     * {@link String#CASE_INSENSITIVE_ORDER} compares them.
+     */
+    private static int hash(String key) {
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The number of properties in the table, including those whose key is repeated.
+     */
+    public int size() {
+        return entries().keys.length;
+    }
+
+    /**
+     * @return The generation of the table, which is greater than that of every table created before it.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getKey(int index) {
+        return entries().keys[index];
+    }
+
+    public String getValue(int index) {
+        return entries().values[index];
+    }
+
+    /**
+     * Finds the first property defined with a key.
+     *
+     * @param key The key to look for, ignoring case.
+     * @return The position of the property, or {@code -1} if it is not defined.
+     */
+    public int indexOf(String key) {
+        return key == null ? -1 : entries().indexOf(key);
+    }
+
+    /**
+     * Looks up the value of the first property defined with a key.
+     *
+     * @param key The key to look for, ignoring case.
+     * @return The value of the property, or {@code null} if it is not defined.
+     */
+    public String get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Entries entries = entries();
+        int index = entries.indexOf(key);
+        return index < 0 ? null : entries.values[index];
+    }
+
+    /**
+     * Tells whether another table holds the same properties as this one, in the same order, whatever its generation.
+     *
+     * @param table The table to compare this one with.
+     * @return Whether both tables hold the same keys and values.
+     */
+    public boolean contentEquals(PropertyTable table) {
+        Entries first = entries();
+        Entries second = table.entries();
+        return first == second
+                || (Arrays.equals(first.keys, second.keys) && Arrays.equals(first.values, second.values));
+    }
+
+    /**
+     * @return A new array holding a {@link StringProperty} for each entry, as used by forms and data binding.
+     */
+    public StringProperty[] toProperties() {
+        Entries entries = entries();
+        StringProperty[] properties = new StringProperty[entries.keys.length];
+        for (int i = 0; i < entries.keys.length; i++) {
+            properties[i] = new StringProperty(entries.keys[i], entries.values[i]);
+        }
+        return properties;
+    }
+
+    /**
+     * Persists a table just like the {@link hudson.util.CopyOnWriteList} which used to hold the properties, so that
+     * existing configuration can still be read, and read by older versions of the plugin.
+     * Tables of {@link #COMPACT_THRESHOLD} properties or more are written as a single gzipped, Base64 encoded block
+     * instead, marked by an {@code encoding} attribute, and read back without being decoded.
+     */
+    public static class ConverterImpl extends AbstractCollectionConverter {
+
+        public ConverterImpl(Mapper mapper) {
+            super(mapper);
+        }
+
+        @Override
+        public boolean canConvert(Class type) {
+            return type == PropertyTable.class;
+        }
+
+        /**
+         * The value of the {@code encoding} attribute of a compact block.
+         */
+        private static final String ENCODING = "gzip+base64";
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            PropertyTable table = (PropertyTable) source;
+            String unreadable = table.getUnreadable();
+            if (unreadable != null) {
+                // Never the empty table it was replaced with.
+                writer.addAttribute("encoding", ENCODING);
+                writer.setValue(unreadable);
+                return;
+            }
+            // Check the size without decoding a table which is still compact.
+            if (table.persistedSize() >= COMPACT_THRESHOLD) {
+                try {
+                    writer.addAttribute("encoding", ENCODING);
+                    writer.setValue(Base64.getEncoder().encodeToString(table.encode()));
+                    return;
+                } catch (IOException e) {
+                    throw new ConversionException("Could not encode folder properties", e);
+                }
+            }
+            for (StringProperty property : table.toProperties()) {
+                writeCompleteItem(property, context, writer);
+            }
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            if (ENCODING.equals(reader.getAttribute("encoding"))) {
+                String value = reader.getValue().trim();
+                try {
+                    byte[] encoded = Base64.getMimeDecoder().decode(value);
+                    return new PropertyTable(encoded, check(encoded));
+                } catch (IllegalArgumentException | IOException e) {
+                    // Reported like any other unreadable configuration, and kept to be written back as it was.
+                    RobustReflectionConverter.addErrorInContext(context, e);
+                    return new PropertyTable(value);
+                }
+            }
+            List<StringProperty> properties = new ArrayList<>();
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                try {
+                    Object item = readBareItem(reader, context, properties);
+                    if (item instanceof StringProperty property) {
+                        properties.add(property);
+                    }
+                } catch (CriticalXStreamException e) {
+                    throw e;
+                } catch (XStreamException | LinkageError e) {
+                    RobustReflectionConverter.addErrorInContext(context, e);
+                }
+                reader.moveUp();
+            }
+            return of(properties);
+        }
+    }
+}
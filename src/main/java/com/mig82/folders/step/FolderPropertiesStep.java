@@ -1,33 +1,136 @@
 package com.mig82.folders.step;
 
-import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.Messages;
+import com.mig82.folders.metrics.ResolutionMetrics;
+import com.mig82.folders.properties.ExpansionPlan;
+import com.mig82.folders.properties.PropertiesFile;
+import com.mig82.folders.properties.PropertiesFormat;
+import com.mig82.folders.properties.PropertiesSnapshot;
+import com.mig82.folders.properties.PropertyLayer;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
-import hudson.model.Job;
+import hudson.FilePath;
+import hudson.Util;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * A custom pipeline step to retrieve folder properties
- * This step is able to run out of a node
+ * This step is able to run out of a node, unless the properties are written to a file
  *
  * @author Miguelangel Fernandez Mendoza and Gong Yi
  */
 public class FolderPropertiesStep extends Step implements Serializable {
     private static final Logger LOGGER = Logger.getLogger(FolderPropertiesStep.class.getName());
 
+    /**
+     * Whether the program of a pipeline only holds a reference to the properties added by this step, rather than a copy
+     * of them, which is then stored once in the directory of the build. Not final so it can be changed from the script
+     * console.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed from the script console")
+    public static boolean SERIALIZE_BY_REFERENCE =
+            SystemProperties.getBoolean(FolderPropertiesStep.class.getName() + ".serializeByReference", true);
+
+    private String include;
+    private String exclude;
+    private String file;
+    private String fileVariable;
+    private boolean stable;
+
     @DataBoundConstructor
     public FolderPropertiesStep() {}
 
+    public String getInclude() {
+        return include;
+    }
+
+    /**
+     * Only adds the properties whose keys match some patterns.
+     *
+     * @param include Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setInclude(String include) {
+        this.include = Util.fixEmptyAndTrim(include);
+    }
+
+    public String getExclude() {
+        return exclude;
+    }
+
+    /**
+     * Leaves out the properties whose keys match some patterns, even if they are included.
+     *
+     * @param exclude Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setExclude(String exclude) {
+        this.exclude = Util.fixEmptyAndTrim(exclude);
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the properties to a file instead of adding them to the environment of the body.
+     *
+     * @param file The name of the format of the file, e.g. {@code dotenv}, or {@code null} to use the environment.
+     */
+    @DataBoundSetter
+    public void setFile(String file) {
+        this.file = Util.fixEmptyAndTrim(file);
+    }
+
+    public String getFileVariable() {
+        return fileVariable == null ? PropertiesFile.DEFAULT_VARIABLE : fileVariable;
+    }
+
+    /**
+     * Sets the environment variable holding the path of the file the properties are written to.
+     *
+     * @param fileVariable The name of the variable.
+     */
+    @DataBoundSetter
+    public void setFileVariable(String fileVariable) {
+        this.fileVariable = Util.fixEmptyAndTrim(fileVariable);
+    }
+
+    public boolean isStable() {
+        return stable;
+    }
+
+    /**
+     * Adds the properties the build got the first time it resolved them, even if a folder changed them since.
+     *
+     * @param stable Whether the properties stay the same for the whole build, rather than being the current ones.
+     */
+    @DataBoundSetter
+    public void setStable(boolean stable) {
+        this.stable = stable;
+    }
+
     @Override
     public StepExecution start(StepContext stepContext) throws Exception {
         return new Execution(stepContext, this);
@@ -44,33 +147,181 @@ public class FolderPropertiesStep extends Step implements Serializable {
         @Override
         protected Void run() throws Exception {
             LOGGER.log(Level.FINER, "Run in 'withFolderProperties' custom pipeline step");
-            Job job = getContext().get(Run.class).getParent();
-            EnvVars envVars = PropertiesLoader.loadFolderProperties(job);
+            long start = ResolutionMetrics.start();
+            Run<?, ?> run = getContext().get(Run.class);
+            // Shared by every block of the build selecting the same properties, like the branches of a parallel.
+            PropertiesMemo.Selection selection = PropertiesMemo.select(
+                    run,
+                    folderPropertiesStep.getInclude(),
+                    folderPropertiesStep.getExclude(),
+                    folderPropertiesStep.isStable());
+            PropertyLayer layer = selection.getLayer();
+            Map<String, String> properties = selection.getProperties();
+            ExpansionPlan plan = selection.getPlan();
             BodyInvoker bodyInvoker = getContext().newBodyInvoker();
-            if (!envVars.isEmpty()) {
+            if (folderPropertiesStep.getFile() != null) {
+                FilePath propertiesFile = writeFile(properties, plan);
+                bodyInvoker.withContext(EnvironmentExpander.merge(
+                        getContext().get(EnvironmentExpander.class),
+                        EnvironmentExpander.constant(Collections.singletonMap(
+                                folderPropertiesStep.getFileVariable(), propertiesFile.getRemote()))));
+                ResolutionMetrics.stop(ResolutionMetrics.STEP_RUN, start);
+                try {
+                    bodyInvoker.start().get();
+                } finally {
+                    deleteFile(propertiesFile);
+                }
+                return null;
+            }
+            if (!properties.isEmpty()) {
                 LOGGER.log(Level.FINER, "Find the folder properties");
                 bodyInvoker.withContext(EnvironmentExpander.merge(
-                        getContext().get(EnvironmentExpander.class), new ExpanderImpl(envVars)));
+                        getContext().get(EnvironmentExpander.class),
+                        new ExpanderImpl(selection, snapshot(run, layer))));
             }
+            // Only time the step itself, not the body it waits for.
+            ResolutionMetrics.stop(ResolutionMetrics.STEP_RUN, start);
             bodyInvoker.start().get();
             return null;
         }
+
+        private PropertiesSnapshot snapshot(Run<?, ?> run, PropertyLayer layer) {
+            if (!SERIALIZE_BY_REFERENCE) {
+                return null;
+            }
+            return PropertiesSnapshot.of(
+                    run, layer, folderPropertiesStep.getInclude(), folderPropertiesStep.getExclude());
+        }
+
+        /**
+         * Writes the properties, expanded just like they would be in the environment, to a file next to the workspace.
+         */
+        private FilePath writeFile(Map<String, String> properties, ExpansionPlan plan) throws Exception {
+            FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null) {
+                throw new AbortException(Messages.folder_properties_file_requires_workspace());
+            }
+            PropertiesFormat format;
+            try {
+                format = PropertiesFormat.forName(folderPropertiesStep.getFile());
+            } catch (IllegalArgumentException e) {
+                throw new AbortException(e.getMessage());
+            }
+            EnvVars expanded = new EnvVars(getContext().get(EnvVars.class));
+            plan.apply(expanded);
+            Map<String, String> written = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                // Keys like PATH+EXTRA are not variables themselves, so keep their values as they are.
+                String value = expanded.get(entry.getKey());
+                written.put(entry.getKey(), value != null ? value : entry.getValue());
+            }
+            return PropertiesFile.write(workspace, format, written);
+        }
+
+        private void deleteFile(FilePath propertiesFile) throws Exception {
+            try {
+                propertiesFile.delete();
+            } catch (IOException e) {
+                // The agent may be gone, which must not fail a body which succeeded.
+                getContext().get(TaskListener.class).error("Could not delete " + propertiesFile + ": " + e);
+            }
+        }
     }
 
-    private static final class ExpanderImpl extends EnvironmentExpander {
+    static final class ExpanderImpl extends EnvironmentExpander {
         @Serial
         private static final long serialVersionUID = 1;
 
-        private final EnvVars overrides;
+        /**
+         * Either the properties themselves or, once a copy of them is stored with the build, only a reference to them
+         * are serialized. Streams written before references existed only hold the properties.
+         */
+        @Serial
+        private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("overrides", EnvVars.class),
+            new ObjectStreamField("snapshot", PropertiesSnapshot.class)
+        };
+
+        /**
+         * The properties, or {@code null} after being deserialized from a reference until they are first needed.
+         */
+        private transient volatile EnvVars overrides;
+
+        private transient PropertiesSnapshot snapshot;
+
+        private transient volatile boolean stored;
+
+        /**
+         * Compiled on first use, and again after deserialization, then applied every time a step needs the env.
+         */
+        private transient volatile ExpansionPlan plan;
+
+        ExpanderImpl(Map<String, String> overrides) {
+            this(overrides, null, null);
+        }
 
-        ExpanderImpl(EnvVars overrides) {
+        /**
+         * Copies the properties, which is needed to serialize them, but reuses a plan already compiled for them, such
+         * as the one shared by all the builds in the same folder.
+         *
+         * @param snapshot The reference to serialize instead of the properties, or {@code null} to serialize them.
+         */
+        ExpanderImpl(Map<String, String> overrides, ExpansionPlan plan, PropertiesSnapshot snapshot) {
             this.overrides = /* ensure serializability*/ new EnvVars(overrides);
+            this.plan = plan;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Shares the copy of the properties and the plan of a selection with the other bodies of the build using it.
+         */
+        ExpanderImpl(PropertiesMemo.Selection selection, PropertiesSnapshot snapshot) {
+            this.overrides = selection.getOverrides();
+            this.plan = selection.getPlan();
+            this.snapshot = snapshot;
         }
 
         @Override
         public void expand(EnvVars env) throws IOException, InterruptedException {
             // Distinct from EnvironmentExpander.constant since we are also expanding variables.
-            env.overrideExpandingAll(overrides);
+            ExpansionPlan plan = this.plan;
+            if (plan == null) {
+                plan = ExpansionPlan.compile(getOverrides());
+                this.plan = plan;
+            }
+            plan.apply(env);
+        }
+
+        private EnvVars getOverrides() throws IOException {
+            EnvVars overrides = this.overrides;
+            if (overrides == null) {
+                overrides = snapshot.load();
+                this.overrides = overrides;
+            }
+            return overrides;
+        }
+
+        @Serial
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            if (snapshot != null && !stored) {
+                // Only the first checkpoint of the program pays for storing the copy.
+                stored = snapshot.store(getOverrides());
+            }
+            ObjectOutputStream.PutField fields = out.putFields();
+            if (stored) {
+                fields.put("snapshot", snapshot);
+            } else {
+                fields.put("overrides", getOverrides());
+            }
+            out.writeFields();
+        }
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField fields = in.readFields();
+            overrides = (EnvVars) fields.get("overrides", null);
+            snapshot = (PropertiesSnapshot) fields.get("snapshot", null);
+            stored = snapshot != null;
         }
     }
 
@@ -0,0 +1,103 @@
+package com.mig82.folders.step;
+
+import com.mig82.folders.Messages;
+import com.mig82.folders.properties.PropertiesLoader;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.steps.*;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * A custom pipeline step to retrieve the value of a single folder property without a body.
+ * The search stops at the nearest ancestor folder which defines the property.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class FolderPropertyStep extends Step implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(FolderPropertyStep.class.getName());
+
+    private final String key;
+    private String defaultValue;
+
+    @DataBoundConstructor
+    public FolderPropertyStep(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDefault() {
+        return defaultValue;
+    }
+
+    /**
+     * Sets the value returned when no ancestor folder defines the property.
+     *
+     * @param defaultValue The default value.
+     */
+    @DataBoundSetter
+    public void setDefault(String defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public StepExecution start(StepContext stepContext) throws Exception {
+        return new Execution(stepContext, this);
+    }
+
+    private static class Execution extends SynchronousStepExecution<String> {
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final transient FolderPropertyStep folderPropertyStep;
+
+        public Execution(StepContext context, FolderPropertyStep folderPropertyStep) {
+            super(context);
+            this.folderPropertyStep = folderPropertyStep;
+        }
+
+        @Override
+        protected String run() throws Exception {
+            String key = folderPropertyStep.getKey();
+            if (key == null || key.trim().isEmpty()) {
+                throw new AbortException(Messages.string_property_name_validation());
+            }
+            LOGGER.log(Level.FINER, "Run in 'folderProperty' custom pipeline step for {0}", key);
+            Job job = getContext().get(Run.class).getParent();
+            String value = PropertiesLoader.loadFolderProperty(job, key);
+            return value != null ? value : folderPropertyStep.getDefault();
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+        @Override
+        public Set<Class<?>> getRequiredContext() {
+            return Collections.<Class<?>>singleton(Run.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "folderProperty";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "A step to retrieve the value of a single folder property";
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mig82.folders.step;
+
+import com.mig82.folders.properties.ExpansionPlan;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyFilter;
+import com.mig82.folders.properties.PropertyLayer;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what {@code withFolderProperties} selected in a build while it runs, so that the branches of a
+ * {@code parallel} step share one selection and one expansion plan per filter instead of each making their own.
+ * A selection is reused for as long as the folders hold the tables it was selected from. Steps asking for stable
+ * properties keep getting those the build first resolved, even once a folder is reconfigured, until the controller
+ * restarts. Nothing is remembered of builds which are no longer running.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public final class PropertiesMemo {
+
+    private static final Map<Run<?, ?>, Memo> MEMOS = new ConcurrentHashMap<>();
+
+    private PropertiesMemo() {}
+
+    /**
+     * Selects the properties a build gets from its folders.
+     *
+     * @param run The build.
+     * @param include The patterns of the keys to select, if any.
+     * @param exclude The patterns of the keys to leave out, if any.
+     * @param stable Whether to select from the properties the build first resolved, rather than the current ones.
+     * @return The selected properties.
+     */
+    public static Selection select(Run<?, ?> run, String include, String exclude, boolean stable) {
+        String key = Objects.toString(include, "") + '\0' + Objects.toString(exclude, "");
+        if (!run.isBuilding()) {
+            // It would never be forgotten.
+            PropertyLayer layer = PropertiesLoader.loadFolderPropertyLayer(run.getParent());
+            return new Resolution(layer).select(key, include, exclude);
+        }
+        Memo memo = MEMOS.computeIfAbsent(
+                run, r -> new Memo(new Resolution(PropertiesLoader.loadFolderPropertyLayer(r.getParent()))));
+        Resolution resolution = stable ? memo.pinned : memo.current(run);
+        return resolution.select(key, include, exclude);
+    }
+
+    /**
+     * What a build selected from its folders, once with each filter.
+     */
+    private static final class Memo {
+        /**
+         * The properties the build resolved first.
+         */
+        private final Resolution pinned;
+
+        /**
+         * The properties the build resolved last.
+         */
+        private volatile Resolution latest;
+
+        Memo(Resolution pinned) {
+            this.pinned = pinned;
+            this.latest = pinned;
+        }
+
+        Resolution current(Run<?, ?> run) {
+            // Validated against the folders by the cache, which returns the same layer while they are unchanged.
+            PropertyLayer layer = PropertiesLoader.loadFolderPropertyLayer(run.getParent());
+            Resolution latest = this.latest;
+            if (latest.layer == layer) {
+                return latest;
+            }
+            if (Arrays.equals(latest.layer.getGenerations(), layer.getGenerations())) {
+                // Resolved again from the same tables, e.g. once the cache evicted the layer.
+                return latest;
+            }
+            latest = new Resolution(layer);
+            this.latest = latest;
+            return latest;
+        }
+    }
+
+    /**
+     * The selections made from one resolution of the properties.
+     */
+    private static final class Resolution {
+        private final PropertyLayer layer;
+        private final Map<String, Selection> selections = new ConcurrentHashMap<>();
+
+        Resolution(PropertyLayer layer) {
+            this.layer = layer;
+        }
+
+        Selection select(String key, String include, String exclude) {
+            return selections.computeIfAbsent(key, k -> {
+                PropertyFilter filter = PropertyFilter.compile(include, exclude);
+                Map<String, String> properties = PropertiesLoader.select(layer, filter);
+                // Unless the properties are filtered, reuse the plan compiled for all the builds in the same folder.
+                ExpansionPlan plan =
+                        filter.isAll() ? layer.getExpansionPlan() : ExpansionPlan.compile(properties);
+                return new Selection(layer, properties, plan);
+            });
+        }
+    }
+
+    /**
+     * Properties selected from a layer, and the plan to expand them.
+     */
+    public static final class Selection {
+        private final PropertyLayer layer;
+        private final Map<String, String> properties;
+        private final ExpansionPlan plan;
+        private final EnvVars overrides;
+
+        Selection(PropertyLayer layer, Map<String, String> properties, ExpansionPlan plan) {
+            this.layer = layer;
+            this.properties = properties;
+            this.plan = plan;
+            this.overrides = new EnvVars(properties);
+        }
+
+        /**
+         * @return The layer the properties were selected from.
+         */
+        public PropertyLayer getLayer() {
+            return layer;
+        }
+
+        /**
+         * @return The selected properties, which must not be modified.
+         */
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        public ExpansionPlan getPlan() {
+            return plan;
+        }
+
+        /**
+         * @return A serializable copy of the properties, shared by every body using this selection, which must not
+         *         modify it.
+         */
+        EnvVars getOverrides() {
+            return overrides;
+        }
+    }
+
+    /**
+     * Forgets the selections of a build once it is done.
+     */
+    @Extension
+    public static class CleanUp extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            MEMOS.remove(run);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.mig82.folders.step;
+
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyFilter;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.Run;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.steps.*;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * A custom pipeline step to retrieve the folder properties a job inherits as a map, without a body.
+ * The values are those the folders define, without expanding the variables they refer to.
+ *
+ * @author Miguelangel Fernandez Mendoza
+ */
+public class ReadFolderPropertiesStep extends Step implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(ReadFolderPropertiesStep.class.getName());
+
+    private String include;
+    private String exclude;
+
+    @DataBoundConstructor
+    public ReadFolderPropertiesStep() {}
+
+    public String getInclude() {
+        return include;
+    }
+
+    /**
+     * Only returns the properties whose keys match some patterns.
+     *
+     * @param include Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setInclude(String include) {
+        this.include = Util.fixEmptyAndTrim(include);
+    }
+
+    public String getExclude() {
+        return exclude;
+    }
+
+    /**
+     * Leaves out the properties whose keys match some patterns, even if they are included.
+     *
+     * @param exclude Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setExclude(String exclude) {
+        this.exclude = Util.fixEmptyAndTrim(exclude);
+    }
+
+    @Override
+    public StepExecution start(StepContext stepContext) throws Exception {
+        return new Execution(stepContext, this);
+    }
+
+    private static class Execution extends SynchronousStepExecution<Map<String, String>> {
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final transient ReadFolderPropertiesStep readFolderPropertiesStep;
+
+        public Execution(StepContext context, ReadFolderPropertiesStep readFolderPropertiesStep) {
+            super(context);
+            this.readFolderPropertiesStep = readFolderPropertiesStep;
+        }
+
+        @Override
+        protected Map<String, String> run() throws Exception {
+            LOGGER.log(Level.FINER, "Run in 'readFolderProperties' custom pipeline step");
+            Job job = getContext().get(Run.class).getParent();
+            ReadFolderPropertiesStep step = readFolderPropertiesStep;
+            PropertyFilter filter = PropertyFilter.compile(step.getInclude(), step.getExclude());
+            // Keys ignore case, like they do in the env, and the map is serializable so the program can keep it.
+            Map<String, String> properties = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            properties.putAll(PropertiesLoader.select(PropertiesLoader.loadFolderPropertyLayer(job), filter));
+            return Collections.unmodifiableMap(properties);
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+        @Override
+        public Set<Class<?>> getRequiredContext() {
+            return Collections.<Class<?>>singleton(Run.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "readFolderProperties";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "A step to retrieve the folder properties as a map";
+        }
+    }
+}
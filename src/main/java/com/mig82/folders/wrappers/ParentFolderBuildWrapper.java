@@ -1,20 +1,33 @@
 package com.mig82.folders.wrappers;
 
 import com.mig82.folders.Messages;
+import com.mig82.folders.metrics.ResolutionMetrics;
+import com.mig82.folders.properties.ExpansionPlan;
+import com.mig82.folders.properties.PropertiesFile;
+import com.mig82.folders.properties.PropertiesFormat;
 import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyFilter;
+import com.mig82.folders.properties.PropertyLayer;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.*;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.ListBoxModel;
 import java.io.IOException;
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.tasks.SimpleBuildWrapper;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * A build wrapper which exposes the properties defined for a folder to all the jobs contained inside it.
@@ -27,9 +40,89 @@ public class ParentFolderBuildWrapper extends SimpleBuildWrapper {
 
     private static final Logger LOGGER = Logger.getLogger(ParentFolderBuildWrapper.class.getName());
 
+    private String include;
+    private String exclude;
+    private String file;
+    private String fileVariable;
+
+    /**
+     * Compiled from {@link #include} and {@link #exclude} on first use, and not persisted.
+     */
+    private transient volatile PropertyFilter filter;
+
     @DataBoundConstructor
     public ParentFolderBuildWrapper() {}
 
+    public String getInclude() {
+        return include;
+    }
+
+    /**
+     * Only adds the properties whose keys match some patterns.
+     *
+     * @param include Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setInclude(String include) {
+        this.include = Util.fixEmptyAndTrim(include);
+        this.filter = null;
+    }
+
+    public String getExclude() {
+        return exclude;
+    }
+
+    /**
+     * Leaves out the properties whose keys match some patterns, even if they are included.
+     *
+     * @param exclude Patterns separated by commas or whitespace, where {@code *} matches any characters and {@code ?}
+     *                any single one.
+     */
+    @DataBoundSetter
+    public void setExclude(String exclude) {
+        this.exclude = Util.fixEmptyAndTrim(exclude);
+        this.filter = null;
+    }
+
+    private PropertyFilter getFilter() {
+        // Compiled once, then shared by all the builds of the job until it is reconfigured.
+        PropertyFilter filter = this.filter;
+        if (filter == null) {
+            filter = PropertyFilter.compile(include, exclude);
+            this.filter = filter;
+        }
+        return filter;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the properties to a file instead of adding them to the environment of the build.
+     *
+     * @param file The name of the format of the file, e.g. {@code dotenv}, or {@code null} to use the environment.
+     */
+    @DataBoundSetter
+    public void setFile(String file) {
+        this.file = Util.fixEmptyAndTrim(file);
+    }
+
+    public String getFileVariable() {
+        return fileVariable == null ? PropertiesFile.DEFAULT_VARIABLE : fileVariable;
+    }
+
+    /**
+     * Sets the environment variable holding the path of the file the properties are written to.
+     *
+     * @param fileVariable The name of the variable.
+     */
+    @DataBoundSetter
+    public void setFileVariable(String fileVariable) {
+        this.fileVariable = Util.fixEmptyAndTrim(fileVariable);
+    }
+
     @Override
     protected boolean runPreCheckout() {
         return true;
@@ -46,17 +139,76 @@ public class ParentFolderBuildWrapper extends SimpleBuildWrapper {
             EnvVars initialEnvironment)
             throws IOException, InterruptedException {
 
+        long start = ResolutionMetrics.start();
         Job job = run.getParent(); // The parent of the run is the Job itself.
-        EnvVars envVars = PropertiesLoader.loadFolderProperties(job);
+        // Read the shared layer directly, so that the only copy made is of the selected properties into the env.
+        PropertyLayer layer = PropertiesLoader.loadFolderPropertyLayer(job);
+        Map<String, String> properties = PropertiesLoader.select(layer, getFilter());
+        if (file != null) {
+            PropertiesFormat format;
+            try {
+                format = PropertiesFormat.forName(file);
+            } catch (IllegalArgumentException e) {
+                throw new AbortException(e.getMessage());
+            }
+            // Only the path of the file goes into the environment, and the file is deleted once the build is done.
+            FilePath propertiesFile =
+                    PropertiesFile.write(workspace, format, expand(layer, properties, initialEnvironment));
+            context.env(getFileVariable(), propertiesFile.getRemote());
+            context.setDisposer(new DeleteFile(propertiesFile.getRemote()));
+            ResolutionMetrics.stop(ResolutionMetrics.WRAPPER_SET_UP, start);
+            return;
+        }
         Map<String, String> env = context.getEnv();
-        for (Map.Entry<String, String> entry : envVars.entrySet()) {
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
             String key = entry.getKey();
             if (!env.containsKey(key)) {
                 env.put(key, entry.getValue());
             }
         }
 
-        LOGGER.log(Level.FINE, "Context env is: {0}", context.getEnv().toString());
+        ResolutionMetrics.stop(ResolutionMetrics.WRAPPER_SET_UP, start);
+
+        // Pass the env itself so that it is only turned into a string if the message is logged.
+        LOGGER.log(Level.FINE, "Context env is: {0}", context.getEnv());
+    }
+
+    /**
+     * Expands the properties just like they would be in the environment of the build, to write them to a file.
+     */
+    private Map<String, String> expand(
+            PropertyLayer layer, Map<String, String> properties, EnvVars initialEnvironment) {
+        // Unless the properties are filtered, reuse the plan compiled for all the builds in the same folder.
+        ExpansionPlan plan = getFilter().isAll() ? layer.getExpansionPlan() : ExpansionPlan.compile(properties);
+        EnvVars expanded = new EnvVars(initialEnvironment);
+        plan.apply(expanded);
+        Map<String, String> written = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            // Keys like PATH+EXTRA are not variables themselves, so keep their values as they are.
+            String value = expanded.get(entry.getKey());
+            written.put(entry.getKey(), value != null ? value : entry.getValue());
+        }
+        return written;
+    }
+
+    /**
+     * Deletes the file the properties were written to at the end of the build.
+     */
+    private static final class DeleteFile extends Disposer {
+        @Serial
+        private static final long serialVersionUID = 1;
+
+        private final String remote;
+
+        DeleteFile(String remote) {
+            this.remote = remote;
+        }
+
+        @Override
+        public void tearDown(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener)
+                throws IOException, InterruptedException {
+            new FilePath(workspace.getChannel(), remote).delete();
+        }
     }
 
     @Symbol("withFolderProperties")
@@ -67,6 +219,15 @@ public class ParentFolderBuildWrapper extends SimpleBuildWrapper {
             return Messages.display_build_wrapper();
         }
 
+        public ListBoxModel doFillFileItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(Messages.folder_properties_file_none(), "");
+            for (PropertiesFormat format : PropertiesFormat.values()) {
+                items.add(format.name(), format.name().toLowerCase(Locale.ROOT));
+            }
+            return items;
+        }
+
         @Override
         public boolean isApplicable(AbstractProject<?, ?> item) {
 
@@ -0,0 +1,41 @@
+document.addEventListener("DOMContentLoaded", function () {
+  var form = document.getElementById("folder-properties-import");
+  if (!form) {
+    return;
+  }
+  form.addEventListener("submit", function (event) {
+    event.preventDefault();
+    var file = form.elements["file"].files[0];
+    if (!file) {
+      return;
+    }
+    var format = form.elements["format"].value;
+    if (!format) {
+      var name = file.name.toLowerCase();
+      if (name.endsWith(".env")) {
+        format = "DOTENV";
+      } else if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+        format = "YAML";
+      } else if (name.endsWith(".json")) {
+        format = "JSON";
+      } else {
+        format = "PROPERTIES";
+      }
+    }
+    var query = new URLSearchParams({
+      format: format,
+      mode: form.elements["mode"].value,
+      subtree: form.elements["subtree"].checked,
+    });
+    // Post the file as it is, so that large files need not be encoded as a form.
+    fetch(form.getAttribute("action") + "?" + query, {
+      method: "post",
+      headers: crumb.wrap({ "Content-Type": "text/plain;charset=UTF-8" }),
+      body: file,
+    }).then(function (response) {
+      response.text().then(function (text) {
+        notificationBar.show(text, response.ok ? notificationBar.SUCCESS : notificationBar.ERROR);
+      });
+    });
+  });
+});
@@ -0,0 +1,133 @@
+package com.mig82.folders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.actions.EffectivePropertiesAction;
+import com.mig82.folders.actions.PropertiesHistoryView;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesTransfer;
+import com.mig82.folders.properties.StringProperty;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.Page;
+import org.htmlunit.WebRequest;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class EffectivePropertiesTest {
+
+    private static FolderProperties<?> define(Folder folder, StringProperty... defined) throws Exception {
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(defined);
+        folder.addProperty(properties);
+        return properties;
+    }
+
+    private static Page get(JenkinsRule.WebClient wc, String path, String etag) throws Exception {
+        WebRequest request = new WebRequest(new URL(wc.getContextPath() + path), HttpMethod.GET);
+        if (etag != null) {
+            request.setAdditionalHeader("If-None-Match", etag);
+        }
+        return wc.getPage(request);
+    }
+
+    @Test
+    void testEffectivePropertiesOfJob(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        define(top, new StringProperty("URL", "https://top.example.com"), new StringProperty("TEAM", "[\"build\"]"));
+        FolderProperties<?> subProperties = define(sub, new StringProperty("url", "https://sub.example.com"));
+        FreeStyleProject p = sub.createProject(FreeStyleProject.class, "p");
+
+        JenkinsRule.WebClient wc = r.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        String path = p.getUrl() + "effective-folder-properties/json";
+        Page page = get(wc, path, null);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        String etag = page.getWebResponse().getResponseHeaderValue("ETag");
+
+        // Sorted by key, with the folder each property comes from, and values which look like JSON kept as strings.
+        JSONArray properties =
+                JSONObject.fromObject(page.getWebResponse().getContentAsString()).getJSONArray("properties");
+        assertEquals(2, properties.size());
+        assertEquals("[\"build\"]", properties.getJSONObject(0).getString("value"));
+        assertEquals("top", properties.getJSONObject(0).getString("folder"));
+        assertEquals("https://sub.example.com", properties.getJSONObject(1).getString("value"));
+        assertEquals("top/sub", properties.getJSONObject(1).getString("folder"));
+
+        // Unchanged until a folder up the chain changes.
+        assertEquals(304, get(wc, path, etag).getWebResponse().getStatusCode());
+        subProperties.setProperties(new StringProperty[] {new StringProperty("OWN", "value")});
+        Page changed = get(wc, path, etag);
+        assertEquals(200, changed.getWebResponse().getStatusCode());
+        assertNotEquals(etag, changed.getWebResponse().getResponseHeaderValue("ETag"));
+
+        // The page of the folder shows the same properties.
+        r.createWebClient().goTo(sub.getUrl() + "effective-folder-properties/");
+    }
+
+    @Test
+    void testEffectivePropertiesHideUnreadableFolders(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder mid = top.createProject(Folder.class, "mid");
+        Folder sub = mid.createProject(Folder.class, "sub");
+        define(top, new StringProperty("TOP", "secret"));
+        define(mid, new StringProperty("MID", "hidden"));
+        define(sub, new StringProperty("SUB", "shown"));
+        FreeStyleProject p = sub.createProject(FreeStyleProject.class, "p");
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        r.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Jenkins.READ)
+                .everywhere()
+                .to("alice")
+                .grant(Item.READ)
+                .onItems(mid)
+                .to("alice")
+                .grant(Item.READ, Item.EXTENDED_READ)
+                .onItems(sub, p)
+                .to("alice"));
+
+        // The value of a property defined by a folder the user may not see into is hidden, and so is the folder if
+        // the user may not even read it. Only the key is left, as it still shadows those above.
+        try (ACLContext ignored = ACL.as2(User.getById("alice", true).impersonate2())) {
+            List<EffectivePropertiesAction.Property> properties = new EffectivePropertiesAction(p).getProperties();
+            assertEquals(3, properties.size());
+            assertEquals("MID", properties.get(0).getKey());
+            assertNull(properties.get(0).getValue());
+            assertEquals("top/mid", properties.get(0).getFolderName());
+            assertEquals("shown", properties.get(1).getValue());
+            assertEquals("TOP", properties.get(2).getKey());
+            assertNull(properties.get(2).getValue());
+            assertNull(properties.get(2).getFolderName());
+
+            List<PropertiesHistoryView.Property> history = new EffectivePropertiesAction(p)
+                    .getHistory()
+                    .getPropertiesAt(System.currentTimeMillis())
+                    .getProperties();
+            assertEquals(3, history.size());
+            assertNull(history.get(0).getValue());
+            assertEquals("top/mid", history.get(0).getFolderName());
+            assertEquals("shown", history.get(1).getValue());
+            assertNull(history.get(2).getFolderName());
+
+            // Nor are they exported.
+            assertEquals(Map.of("SUB", "shown"), PropertiesTransfer.exportProperties(sub, true));
+        }
+    }
+}
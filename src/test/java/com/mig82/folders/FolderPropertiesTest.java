@@ -1,11 +1,29 @@
 package com.mig82.folders;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.metrics.ResolutionMetrics;
 import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesIndex;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertyLayer;
+import com.mig82.folders.properties.PropertyTable;
 import com.mig82.folders.properties.StringProperty;
+import com.mig82.folders.wrappers.ParentFolderBuildWrapper;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import hudson.util.XStream2;
 import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.jupiter.api.BeforeAll;
@@ -201,4 +219,378 @@ class FolderPropertiesTest {
         // Check the logs
         r.assertLogContains("key1: value1", b);
     }
+
+    @Test
+    void testPipelineSingleProperty(TestInfo info) throws Exception {
+        // Create a subfolder.
+        Folder sub = f.createProject(Folder.class, "sub-single");
+
+        // Add a property in the subfolder that overrides another in the parent folder.
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("key1", "override")});
+        sub.addProperty(properties);
+
+        // Create a pipeline job inside the subfolder which reads single properties from its ancestors.
+        WorkflowJob p = PipelineTestHelper.createJob(
+                sub, "p-" + info.getTestMethod().orElseThrow().getName(), """
+                echo("key1: ${folderProperty(key: 'key1')}")
+                echo("key2: ${folderProperty(key: 'key2')}")
+                echo("key3: ${folderProperty(key: 'key3', default: 'fallback')}")
+                echo("key4: ${folderProperty(key: 'key4')}")
+                """);
+
+        // Run the build
+        WorkflowRun b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        // Check the logs
+        r.assertLogContains("key1: override", b);
+        r.assertLogContains("key2: value2", b);
+        r.assertLogContains("key3: fallback", b);
+        r.assertLogContains("key4: null", b);
+    }
+
+    @Test
+    void testPipelineReadProperties(TestInfo info) throws Exception {
+        WorkflowJob p = PipelineTestHelper.createJob(
+                f, "p-" + info.getTestMethod().orElseThrow().getName(), """
+                def all = readFolderProperties()
+                echo("all: ${all.size()} ${all.KEY1} ${all['key2']}")
+                def some = readFolderProperties(exclude: 'key1')
+                echo("some: ${some.size()} ${some.key1} ${some.key2}")
+                try {
+                  some.put('key3', 'value3')
+                } catch (UnsupportedOperationException e) {
+                  echo('immutable')
+                }
+                """);
+
+        WorkflowRun b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        r.assertLogContains("all: 2 value1 value2", b);
+        r.assertLogContains("some: 1 null value2", b);
+        r.assertLogContains("immutable", b);
+    }
+
+    @Test
+    void testFreestyleAfterPropertiesChange() throws Exception {
+        Folder folder = r.jenkins.createProject(Folder.class, "cache-1");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("key1", "before")});
+        folder.addProperty(properties);
+
+        FreeStyleProject p = FreestyleTestHelper.createJob(folder, "p-3");
+        FreestyleTestHelper.addEcho(p, "key1");
+        r.assertLogContains("key1: before", r.assertBuildStatusSuccess(p.scheduleBuild2(0)));
+
+        // Replacing the properties must not leave stale values behind.
+        FolderProperties<?> changed = new FolderProperties<>();
+        changed.setProperties(new StringProperty[] {new StringProperty("key1", "after")});
+        folder.getProperties().replace(changed);
+        r.assertLogContains("key1: after", r.assertBuildStatusSuccess(p.scheduleBuild2(0)));
+    }
+
+    @Test
+    void testFreestyleAfterMove() throws Exception {
+        Folder source = r.jenkins.createProject(Folder.class, "cache-2");
+        FolderProperties<?> sourceProperties = new FolderProperties<>();
+        sourceProperties.setProperties(new StringProperty[] {new StringProperty("key1", "source")});
+        source.addProperty(sourceProperties);
+
+        Folder destination = r.jenkins.createProject(Folder.class, "cache-3");
+        FolderProperties<?> destinationProperties = new FolderProperties<>();
+        destinationProperties.setProperties(new StringProperty[] {new StringProperty("key1", "destination")});
+        destination.addProperty(destinationProperties);
+
+        Folder sub = source.createProject(Folder.class, "sub-3");
+        FreeStyleProject p = FreestyleTestHelper.createJob(sub, "p-4");
+        FreestyleTestHelper.addEcho(p, "key1");
+        r.assertLogContains("key1: source", r.assertBuildStatusSuccess(p.scheduleBuild2(0)));
+
+        // Moving the sub-folder must make its jobs inherit from their new ancestors.
+        Items.move(sub, destination);
+        r.assertLogContains("key1: destination", r.assertBuildStatusSuccess(p.scheduleBuild2(0)));
+    }
+
+    @Test
+    void testLegacyConfiguration() {
+        // The format written by the versions which kept the properties in a CopyOnWriteList.
+        String xml = """
+                <com.mig82.folders.properties.FolderProperties>
+                  <properties>
+                    <com.mig82.folders.properties.StringProperty>
+                      <key>key1</key>
+                      <value>value1</value>
+                    </com.mig82.folders.properties.StringProperty>
+                    <com.mig82.folders.properties.StringProperty>
+                      <key>key2</key>
+                      <value>value2</value>
+                    </com.mig82.folders.properties.StringProperty>
+                  </properties>
+                </com.mig82.folders.properties.FolderProperties>""";
+        XStream2 xstream = new XStream2();
+        FolderProperties<?> properties = (FolderProperties<?>) xstream.fromXML(xml);
+        assertEquals(2, properties.getTable().size());
+        assertEquals("value2", properties.getTable().get("key2"));
+
+        // It must still be written the same way.
+        String written = xstream.toXML(properties);
+        assertTrue(written.contains("<com.mig82.folders.properties.StringProperty>"), written);
+        assertTrue(written.contains("<key>key1</key>"), written);
+        assertTrue(written.contains("<value>value2</value>"), written);
+    }
+
+    @Test
+    void testCompactConfiguration() {
+        StringProperty[] many = new StringProperty[PropertyTable.COMPACT_THRESHOLD];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new StringProperty("SERVICE_" + i + "_VERSION", "1." + i + ".0");
+        }
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(many);
+        XStream2 xstream = new XStream2();
+        String written = xstream.toXML(properties);
+        assertTrue(written.contains("encoding=\"gzip+base64\""), written);
+        assertFalse(written.contains("SERVICE_0_VERSION"), written);
+
+        // Read back without being decoded, until the properties are first needed.
+        FolderProperties<?> read = (FolderProperties<?>) xstream.fromXML(written);
+        assertEquals(written, xstream.toXML(read));
+        assertEquals(many.length, read.getTable().size());
+        assertEquals("1.42.0", read.getTable().get("service_42_version"));
+        assertEquals(written, xstream.toXML(read));
+    }
+
+    @Test
+    void testUnreadableCompactConfiguration() {
+        String xml =
+                """
+                <com.mig82.folders.properties.FolderProperties>
+                  <properties encoding="gzip+base64">bm90IGd6aXA=</properties>
+                </com.mig82.folders.properties.FolderProperties>""";
+        XStream2 xstream = new XStream2();
+        FolderProperties<?> properties = (FolderProperties<?>) xstream.fromXML(xml);
+        assertEquals(0, properties.getTable().size());
+
+        // Written back as it was read, rather than as an empty table.
+        assertTrue(xstream.toXML(properties).contains(">bm90IGd6aXA=</properties>"));
+    }
+
+    @Test
+    void testCompactThresholdAppliesToUndecodedTables() {
+        StringProperty[] many = new StringProperty[PropertyTable.COMPACT_THRESHOLD];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new StringProperty("SERVICE_" + i + "_VERSION", "1." + i + ".0");
+        }
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(many);
+        XStream2 xstream = new XStream2();
+        FolderProperties<?> read = (FolderProperties<?>) xstream.fromXML(xstream.toXML(properties));
+        int threshold = PropertyTable.COMPACT_THRESHOLD;
+        PropertyTable.COMPACT_THRESHOLD = Integer.MAX_VALUE;
+        try {
+            // Downgrading must be possible even for folders whose properties were never needed.
+            String written = xstream.toXML(read);
+            assertFalse(written.contains("encoding=\"gzip+base64\""), written);
+            assertTrue(written.contains("<key>SERVICE_42_VERSION</key>"), written);
+        } finally {
+            PropertyTable.COMPACT_THRESHOLD = threshold;
+        }
+    }
+
+    @Test
+    void testTextEditor() throws Exception {
+        StringProperty[] many = new StringProperty[FolderProperties.TEXT_EDITOR_THRESHOLD];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new StringProperty("SERVICE_" + i + "_URL", "https://service-" + i + ".example.com/ =x");
+        }
+        Folder folder = r.jenkins.createProject(Folder.class, "text-editor");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(many);
+        folder.addProperty(properties);
+        assertTrue(properties.isTextEditor());
+
+        // Submitted as a single text area, which gives back the same properties.
+        r.configRoundtrip(folder);
+        FolderProperties<?> saved = folder.getProperties().get(FolderProperties.class);
+        assertEquals(many.length, saved.getTable().size());
+        assertEquals("https://service-42.example.com/ =x", saved.getTable().get("SERVICE_42_URL"));
+
+        FolderProperties.DescriptorImpl descriptor =
+                r.jenkins.getDescriptorByType(FolderProperties.DescriptorImpl.class);
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckText(folder, saved.getText()).kind);
+        assertEquals(FormValidation.Kind.ERROR, descriptor.doCheckText(folder, "A=1\n=2\na=3\n").kind);
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckText(folder, "A=${B}\nB=${A}\n").kind);
+    }
+
+    @Test
+    void testTextWithMissingKeysAndValues() {
+        // Properties set from a script may lack a key or a value.
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {
+            new StringProperty(null, "orphan"), new StringProperty("EMPTY", null), new StringProperty("A", "1")
+        });
+        assertEquals("EMPTY=\nA=1\n", properties.getText());
+    }
+
+    @Test
+    void testSealedFolder() throws Exception {
+        Folder team = f.createProject(Folder.class, "team");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("OWN", "team")});
+        team.addProperty(properties);
+        Folder app = team.createProject(Folder.class, "app");
+        FreeStyleProject p = app.createProject(FreeStyleProject.class, "p");
+        assertEquals("value1", PropertiesLoader.loadFolderPropertyLayer(p).get("key1"));
+
+        // Neither resolution, nor the cache it already filled, nor single lookups go past a sealed folder.
+        properties.setSealed(true);
+        PropertyLayer layer = PropertiesLoader.loadFolderPropertyLayer(p);
+        assertEquals(Map.of("OWN", "team"), new TreeMap<>(layer.asMap()));
+        assertNull(PropertiesLoader.loadFolderProperty(p, "key1"));
+        assertEquals("team", PropertiesLoader.loadFolderProperty(p, "OWN"));
+        assertTrue(PropertiesIndex.getDefinitions(p, "key1").isEmpty());
+
+        properties.setSealed(false);
+        assertEquals("value1", PropertiesLoader.loadFolderPropertyLayer(p).get("key1"));
+    }
+
+    @Test
+    void testInjectedWithoutWrapper() throws Exception {
+        Folder injected = r.jenkins.createProject(Folder.class, "injected");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {
+            new StringProperty("INJECTED", "yes"),
+            new StringProperty("JOB_NAME", "overridden"),
+            new StringProperty("TARGET", "${INJECTED}-${JOB_NAME}")
+        });
+        injected.addProperty(properties);
+        Folder sub = injected.createProject(Folder.class, "sub");
+        FreeStyleProject p = sub.createProject(FreeStyleProject.class, "p");
+        FreestyleTestHelper.addEcho(p, "INJECTED");
+        FreestyleTestHelper.addEcho(p, "JOB_NAME");
+        FreestyleTestHelper.addEcho(p, "TARGET");
+
+        FreeStyleBuild b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        r.assertLogNotContains("INJECTED: yes", b);
+
+        properties.setInject(true);
+        b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        r.assertLogContains("INJECTED: yes", b);
+        // Variables the build already defines are not overridden.
+        r.assertLogContains("JOB_NAME: injected/sub/p", b);
+        // Values are expanded, against the variables of the build rather than the properties they shadow.
+        r.assertLogContains("TARGET: yes-injected/sub/p", b);
+        assertEquals("yes", b.getEnvironment(TaskListener.NULL).get("INJECTED"));
+
+        WorkflowJob pipeline = PipelineTestHelper.createJob(sub, "pipeline", "echo(\"INJECTED: ${env.INJECTED}\")");
+        r.assertLogContains("INJECTED: yes", r.assertBuildStatusSuccess(pipeline.scheduleBuild2(0)));
+    }
+
+    @Test
+    void testPipelineFile(TestInfo info) throws Exception {
+        WorkflowJob p = PipelineTestHelper.createJob(
+                f, "p-" + info.getTestMethod().orElseThrow().getName(), """
+                node {
+                  def path
+                  withFolderProperties(file: 'dotenv') {
+                    path = env.FOLDER_PROPERTIES_FILE
+                    echo("key1: ${env.key1}")
+                    echo(readFile(path))
+                  }
+                  echo("exists: ${fileExists(path)}")
+                }
+                """);
+
+        WorkflowRun b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        // Only the path of the file is in the environment, and the file is gone after the block.
+        r.assertLogContains("key1: null", b);
+        r.assertLogContains("key1=value1", b);
+        r.assertLogContains("key2=value2", b);
+        r.assertLogContains("exists: false", b);
+    }
+
+    @Test
+    void testFreestyleFile() throws Exception {
+        FreeStyleProject p = f.createProject(FreeStyleProject.class, "p-7");
+        ParentFolderBuildWrapper wrapper = new ParentFolderBuildWrapper();
+        wrapper.setFile("json");
+        wrapper.setFileVariable("PROPERTIES_FILE");
+        p.getBuildWrappersList().add(wrapper);
+        FreestyleTestHelper.addEcho(p, "PROPERTIES_FILE");
+
+        FreeStyleBuild b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        r.assertLogContains("folder-properties-", b);
+        r.assertLogContains(".json", b);
+        r.assertLogNotContains("value1", b);
+    }
+
+    @Test
+    void testPipelineFilter(TestInfo info) throws Exception {
+        WorkflowJob p = PipelineTestHelper.createJob(
+                f, "p-" + info.getTestMethod().orElseThrow().getName(), """
+                withFolderProperties(include: 'KEY*', exclude: 'key2') {
+                  echo("key1: ${env.key1}")
+                  echo("key2: ${env.key2}")
+                }
+                """);
+
+        WorkflowRun b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        r.assertLogContains("key1: value1", b);
+        r.assertLogContains("key2: null", b);
+    }
+
+    @Test
+    void testFreestyleFilter() throws Exception {
+        FreeStyleProject p = f.createProject(FreeStyleProject.class, "p-8");
+        ParentFolderBuildWrapper wrapper = new ParentFolderBuildWrapper();
+        wrapper.setInclude("key?");
+        wrapper.setExclude("*1");
+        p.getBuildWrappersList().add(wrapper);
+        FreestyleTestHelper.addEcho(p, "key1");
+        FreestyleTestHelper.addEcho(p, "key2");
+
+        FreeStyleBuild b = r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        r.assertLogNotContains("value1", b);
+        r.assertLogContains("key2: value2", b);
+    }
+
+    @Test
+    void testMetrics() throws Exception {
+        Folder sub = f.createProject(Folder.class, "sub-5");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("key1", "override")});
+        sub.addProperty(properties);
+        FreeStyleProject p = FreestyleTestHelper.createJob(sub, "p-6");
+
+        long shadowed = ResolutionMetrics.getPropertiesShadowed();
+        long misses = ResolutionMetrics.getCacheMisses();
+        long hits = ResolutionMetrics.getCacheHits();
+        r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        // The first build resolves the sub-folder, where key1 shadows the value inherited from its parent.
+        assertTrue(ResolutionMetrics.getPropertiesShadowed() > shadowed);
+        assertTrue(ResolutionMetrics.getCacheMisses() > misses);
+        // The second one finds it in the cache.
+        assertTrue(ResolutionMetrics.getCacheHits() > hits);
+
+        // A job outside of any folder has nothing to find in the cache, and is neither a hit nor a miss.
+        FreeStyleProject root = r.createFreeStyleProject("root-7");
+        hits = ResolutionMetrics.getCacheHits();
+        misses = ResolutionMetrics.getCacheMisses();
+        PropertiesLoader.loadFolderPropertyLayer(root);
+        assertEquals(hits, ResolutionMetrics.getCacheHits());
+        assertEquals(misses, ResolutionMetrics.getCacheMisses());
+
+        JSONObject json = JSONObject.fromObject(r.createWebClient()
+                .goTo("folder-properties-metrics/", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        assertTrue(json.getJSONObject("resolutionMicros").getLong("count") > 0, json.toString());
+        assertTrue(json.getJSONObject("wrapperSetUpMicros").getLong("count") > 0, json.toString());
+    }
 }
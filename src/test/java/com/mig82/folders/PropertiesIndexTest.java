@@ -0,0 +1,126 @@
+package com.mig82.folders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesIndex;
+import com.mig82.folders.properties.PropertiesTransfer;
+import com.mig82.folders.properties.StringProperty;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.util.List;
+import java.util.stream.Collectors;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertiesIndexTest {
+
+    private static void define(Folder folder, String key, String value) throws Exception {
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty(key, value)});
+        folder.addProperty(properties);
+    }
+
+    private static List<String> definingFolders(String key) {
+        return PropertiesIndex.getDefinitions(key).stream()
+                .map(definition -> definition.getFolder().getFullName())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testDefinitionsAndShadowing(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        Folder other = top.createProject(Folder.class, "other");
+        define(top, "ARTIFACTORY_URL", "https://top.example.com");
+        define(sub, "ARTIFACTORY_URL", "https://sub.example.com");
+        FreeStyleProject inSub = sub.createProject(FreeStyleProject.class, "p");
+        FreeStyleProject inOther = other.createProject(FreeStyleProject.class, "p");
+
+        // Keys are looked up ignoring case, like resolution does.
+        assertEquals(List.of("top", "top/sub"), definingFolders("artifactory_url"));
+
+        List<PropertiesIndex.Definition> forJob = PropertiesIndex.getDefinitions(inSub, "ARTIFACTORY_URL");
+        assertEquals(2, forJob.size());
+        assertEquals(sub, forJob.get(0).getFolder());
+        assertEquals("https://sub.example.com", forJob.get(0).getValue());
+        assertEquals(top, forJob.get(0).getShadowed());
+        assertNull(forJob.get(1).getShadowed());
+
+        assertEquals(List.of(inOther), PropertiesIndex.getInheritingJobs(top, "ARTIFACTORY_URL"));
+        assertEquals(List.of(inSub), PropertiesIndex.getInheritingJobs(sub, "ARTIFACTORY_URL"));
+
+        JSONObject json = JSONObject.fromObject(r.createWebClient()
+                .goTo("manage/folder-properties-index/query?key=ARTIFACTORY_URL&job=top/sub/p", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        JSONArray definitions = json.getJSONArray("definitions");
+        assertEquals("top/sub", definitions.getJSONObject(0).getString("folder"));
+        assertTrue(definitions.getJSONObject(0).getBoolean("wins"));
+        assertEquals("top", definitions.getJSONObject(0).getString("shadows"));
+    }
+
+    @Test
+    void testDefinitionsHideUnreadableFolders(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        define(top, "KEY", "top");
+        define(sub, "KEY", "sub");
+        FreeStyleProject p = sub.createProject(FreeStyleProject.class, "p");
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        r.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Item.READ)
+                .onItems(sub, p)
+                .to("alice")
+                .grant(Item.READ)
+                .onItems(top, p)
+                .to("bob"));
+
+        // The folder shadowed by a definition is not named to a user who may not read it.
+        try (ACLContext ignored = ACL.as2(User.getById("alice", true).impersonate2())) {
+            List<PropertiesIndex.Definition> definitions = PropertiesIndex.getDefinitions(p, "KEY");
+            assertEquals(sub, definitions.get(0).getFolder());
+            assertTrue(definitions.get(0).isWinning());
+            assertNull(definitions.get(0).getShadowed());
+        }
+        // Nor is the definition the job gets listed, but the one listed first is not taken for it either.
+        try (ACLContext ignored = ACL.as2(User.getById("bob", true).impersonate2())) {
+            List<PropertiesIndex.Definition> definitions = PropertiesIndex.getDefinitions(p, "KEY");
+            assertEquals(1, definitions.size());
+            assertEquals(top, definitions.get(0).getFolder());
+            assertFalse(definitions.get(0).isWinning());
+        }
+    }
+
+    @Test
+    void testIndexFollowsChanges(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        define(sub, "KEY", "value");
+        assertEquals(List.of("top/sub"), definingFolders("KEY"));
+
+        sub.renameTo("renamed");
+        assertEquals(List.of("top/renamed"), definingFolders("KEY"));
+
+        // Replacing the properties drops the keys which are no longer defined.
+        PropertiesTransfer.importProperties(
+                sub, List.of(new StringProperty("OTHER", "value")), PropertiesTransfer.Mode.REPLACE, false);
+        assertEquals(List.of(), definingFolders("KEY"));
+        assertEquals(List.of("top/renamed"), definingFolders("OTHER"));
+
+        top.delete();
+        assertEquals(List.of(), definingFolders("OTHER"));
+    }
+}
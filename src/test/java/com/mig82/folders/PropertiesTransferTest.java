@@ -0,0 +1,113 @@
+package com.mig82.folders;
+
+import static hudson.cli.CLICommandInvoker.Matcher.failedWith;
+import static hudson.cli.CLICommandInvoker.Matcher.succeeded;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesTransfer;
+import com.mig82.folders.properties.PropertyTable;
+import com.mig82.folders.properties.StringProperty;
+import hudson.cli.CLICommandInvoker;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertiesTransferTest {
+
+    private static CLICommandInvoker.Result invoke(JenkinsRule r, String command, String stdin, String... args) {
+        return new CLICommandInvoker(r, command)
+                .withStdin(new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)))
+                .invokeWithArgs(args);
+    }
+
+    private static FolderProperties<?> propertiesOf(Folder folder) {
+        return folder.getProperties().get(FolderProperties.class);
+    }
+
+    @Test
+    void testImportIntoSubtree(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        Folder other = top.createProject(Folder.class, "other");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {
+            new StringProperty("URL", "https://old.example.com"), new StringProperty("KEEP", "kept")
+        });
+        sub.addProperty(properties);
+
+        CLICommandInvoker.Result result = invoke(
+                r,
+                "import-folder-properties",
+                "URL=https://new.example.com\nTEAM=\"build team\"\n",
+                "top",
+                "--format",
+                "dotenv",
+                "--subtree");
+        assertThat(result, succeeded());
+
+        // The folder gets every imported property, sub-folders only those they already define.
+        assertEquals("https://new.example.com", propertiesOf(top).getTable().get("URL"));
+        assertEquals("build team", propertiesOf(top).getTable().get("TEAM"));
+        assertEquals("https://new.example.com", propertiesOf(sub).getTable().get("URL"));
+        assertEquals("kept", propertiesOf(sub).getTable().get("KEEP"));
+        assertNull(propertiesOf(sub).getTable().get("TEAM"));
+        assertNull(propertiesOf(other));
+    }
+
+    @Test
+    void testExport(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        FolderProperties<?> topProperties = new FolderProperties<>();
+        topProperties.setProperties(new StringProperty[] {new StringProperty("INHERITED", "from top")});
+        top.addProperty(topProperties);
+        Folder sub = top.createProject(Folder.class, "sub");
+        FolderProperties<?> subProperties = new FolderProperties<>();
+        subProperties.setProperties(new StringProperty[] {new StringProperty("OWN", "from sub")});
+        sub.addProperty(subProperties);
+
+        CLICommandInvoker.Result own = invoke(r, "export-folder-properties", "", "top/sub", "--format", "yaml");
+        assertThat(own, succeeded());
+        assertEquals("OWN: from sub\n", own.stdout());
+
+        CLICommandInvoker.Result effective = invoke(r, "export-folder-properties", "", "top/sub", "--effective");
+        assertThat(effective, succeeded());
+        assertThat(effective.stdout(), containsString("INHERITED=from top"));
+        assertThat(effective.stdout(), containsString("OWN=from sub"));
+
+        assertThat(invoke(r, "export-folder-properties", "", "missing"), failedWith(3));
+    }
+
+    @Test
+    void testImportWithoutChanges(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("KEY", "value")});
+        top.addProperty(properties);
+        PropertyTable table = properties.getTable();
+
+        // Replacing the properties with the same ones neither saves the folder nor publishes a new table.
+        assertEquals(
+                0,
+                PropertiesTransfer.importProperties(
+                        top, List.of(new StringProperty("KEY", "value")), PropertiesTransfer.Mode.REPLACE, false));
+        assertSame(table, properties.getTable());
+    }
+
+    @Test
+    void testImportRejectsReplacingSubtree(JenkinsRule r) throws Exception {
+        r.jenkins.createProject(Folder.class, "top");
+        CLICommandInvoker.Result result =
+                invoke(r, "import-folder-properties", "KEY=value\n", "top", "--mode", "replace", "--subtree");
+        assertThat(result, failedWith(3));
+    }
+}
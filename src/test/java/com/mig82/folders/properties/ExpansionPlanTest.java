@@ -0,0 +1,87 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import hudson.EnvVars;
+import org.junit.jupiter.api.Test;
+
+class ExpansionPlanTest {
+
+    private static final EnvVars BUILD_ENV = new EnvVars("HOME", "/home/jenkins", "PATH", "/usr/bin", "EMPTY", "x");
+
+    /**
+     * Checks that applying the plan gives the same result as {@link EnvVars#overrideExpandingAll}.
+     */
+    private static ExpansionPlan assertSameAsOverrideExpandingAll(EnvVars overrides) {
+        EnvVars expected = new EnvVars(BUILD_ENV);
+        expected.overrideExpandingAll(overrides);
+
+        ExpansionPlan plan = ExpansionPlan.compile(overrides);
+        EnvVars actual = new EnvVars(BUILD_ENV);
+        plan.apply(actual);
+        assertEquals(expected, actual);
+
+        // Applying it again to a fresh env must give the same result.
+        EnvVars again = new EnvVars(BUILD_ENV);
+        plan.apply(again);
+        assertEquals(expected, again);
+        return plan;
+    }
+
+    @Test
+    void testChainedReferences() {
+        ExpansionPlan plan = assertSameAsOverrideExpandingAll(
+                new EnvVars("A", "${B}/a", "B", "$C/b", "C", "base", "D", "${HOME}/${A}"));
+        assertNull(plan.getCycle());
+    }
+
+    @Test
+    void testUnresolvedAndEscapedReferences() {
+        assertSameAsOverrideExpandingAll(new EnvVars("A", "${MISSING}-$MISSING", "B", "$${HOME}", "C", "cost: $$5"));
+    }
+
+    @Test
+    void testSelfReferenceAndExtension() {
+        assertSameAsOverrideExpandingAll(new EnvVars("PATH", "/opt/bin:${PATH}", "PATH+EXTRA", "/extra/bin"));
+    }
+
+    @Test
+    void testEmptyValueRemovesVariable() {
+        assertSameAsOverrideExpandingAll(new EnvVars("EMPTY", "", "A", "${EMPTY}"));
+    }
+
+    @Test
+    void testCaseInsensitiveReferences() {
+        assertSameAsOverrideExpandingAll(new EnvVars("a", "${B}", "b", "value"));
+    }
+
+    @Test
+    void testCycle() {
+        ExpansionPlan plan = assertSameAsOverrideExpandingAll(new EnvVars("A", "${B}", "B", "${C}", "C", "${A}"));
+        assertNotNull(plan.getCycle());
+        assertEquals(4, plan.getCycle().size());
+    }
+
+    @Test
+    void testLongChains() {
+        // Deep enough to overflow the stack of a thread if the references were followed recursively.
+        int length = 100_000;
+        EnvVars chain = new EnvVars();
+        for (int i = 0; i < length; i++) {
+            chain.put("V" + i, "${V" + (i + 1) + "}");
+        }
+        chain.put("V" + length, "end");
+        ExpansionPlan plan = ExpansionPlan.compile(chain);
+        assertNull(plan.getCycle());
+        EnvVars env = new EnvVars();
+        plan.apply(env);
+        assertEquals("end", env.get("V0"));
+
+        chain.put("V" + length, "${V0}");
+        plan = ExpansionPlan.compile(chain);
+        assertNotNull(plan.getCycle());
+        assertEquals(length + 2, plan.getCycle().size());
+    }
+}
@@ -0,0 +1,102 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.EnvVars;
+import hudson.ExtensionList;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertiesFileSourceTest {
+
+    private static Path write(JenkinsRule r, String name, String content) throws Exception {
+        Path file = r.jenkins.getRootDir().toPath().resolve(PropertiesFileSource.DIRECTORY).resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void testFileProperties(JenkinsRule r) throws Exception {
+        Path file = write(r, "team.env", "SERVICE_VERSION=1.0\nREGISTRY=file\n");
+        Folder folder = r.jenkins.createProject(Folder.class, "f");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("REGISTRY", "inline")});
+        properties.setFile("team.env");
+        folder.addProperty(properties);
+        FreeStyleProject p = folder.createProject(FreeStyleProject.class, "p");
+
+        // Inline properties shadow those in the file.
+        EnvVars env = PropertiesLoader.loadFolderProperties(p);
+        assertEquals("1.0", env.get("SERVICE_VERSION"));
+        assertEquals("inline", env.get("REGISTRY"));
+        PropertyTable table = properties.getTable();
+
+        // Touching the file does not publish new properties.
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        ExtensionList.lookupSingleton(PropertiesFileSource.ReloadWork.class).execute(TaskListener.NULL);
+        assertSame(table, properties.getTable());
+
+        write(r, "team.env", "SERVICE_VERSION=2.0\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        ExtensionList.lookupSingleton(PropertiesFileSource.ReloadWork.class).execute(TaskListener.NULL);
+        env = PropertiesLoader.loadFolderProperties(p);
+        assertEquals("2.0", env.get("SERVICE_VERSION"));
+        assertEquals("inline", env.get("REGISTRY"));
+
+        // The properties in the file are not persisted in the configuration of the folder.
+        assertEquals(1, properties.getProperties().length);
+        properties.setFile(null);
+        assertNull(PropertiesLoader.loadFolderProperties(p).get("SERVICE_VERSION"));
+
+        // A file no folder reads any more is forgotten.
+        assertTrue(PropertiesFileSource.isLoaded(file));
+        ExtensionList.lookupSingleton(PropertiesFileSource.ReloadWork.class).execute(TaskListener.NULL);
+        assertFalse(PropertiesFileSource.isLoaded(file));
+    }
+
+    @Test
+    void testMappedFileProperties(JenkinsRule r) throws Exception {
+        long threshold = PropertiesFileSource.MAP_THRESHOLD;
+        PropertiesFileSource.MAP_THRESHOLD = 0;
+        try {
+            Path file = write(r, "mapped.properties", "GREETING=h\u00e9llo\nNAME=caf\u00e9\n");
+            Folder folder = r.jenkins.createProject(Folder.class, "f");
+            FolderProperties<?> properties = new FolderProperties<>();
+            properties.setFile("mapped.properties");
+            folder.addProperty(properties);
+            FreeStyleProject p = folder.createProject(FreeStyleProject.class, "p");
+            assertEquals("caf\u00e9", PropertiesLoader.loadFolderProperties(p).get("NAME"));
+
+            write(r, "mapped.properties", "NAME=cr\u00e8me\n");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+            ExtensionList.lookupSingleton(PropertiesFileSource.ReloadWork.class).execute(TaskListener.NULL);
+            assertEquals("cr\u00e8me", PropertiesLoader.loadFolderProperties(p).get("NAME"));
+        } finally {
+            PropertiesFileSource.MAP_THRESHOLD = threshold;
+        }
+    }
+
+    @Test
+    void testFileMustBeUnderDirectory(JenkinsRule r) {
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFileSource.resolve("../secrets/master.key"));
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFileSource.resolve("."));
+        assertEquals(
+                r.jenkins.getRootDir().toPath().resolve("folder-properties/a/b.yaml"),
+                PropertiesFileSource.resolve("a/./b.yaml"));
+    }
+}
@@ -0,0 +1,153 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PropertiesFormatTest {
+
+    private static Map<String, String> sample() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("SCM_URL", "https://example.com/repo.git");
+        properties.put("GREETING", "hello world: #1");
+        properties.put("MULTI_LINE", "first\nsecond \"quoted\"");
+        properties.put("REFERENCE", "${SCM_URL}/branch");
+        properties.put("FLAG", "true");
+        properties.put("EMPTY", "");
+        return properties;
+    }
+
+    private static Map<String, String> toMap(List<StringProperty> properties) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (StringProperty property : properties) {
+            map.put(property.getKey(), property.getValue());
+        }
+        return map;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        for (PropertiesFormat format : PropertiesFormat.values()) {
+            StringWriter writer = new StringWriter();
+            format.write(sample(), writer);
+            List<StringProperty> read = format.read(new StringReader(writer.toString()));
+            assertEquals(sample(), toMap(read), format + ":\n" + writer);
+        }
+    }
+
+    @Test
+    void testDotenv() throws IOException {
+        List<StringProperty> read = PropertiesFormat.DOTENV.read(new StringReader("""
+                # A comment
+                export FOO=bar
+                SINGLE='${NOT_ESCAPED}\\n'
+                DOUBLE="tab\\there"
+
+                SPACED = value with spaces
+                """));
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("FOO", "bar");
+        expected.put("SINGLE", "${NOT_ESCAPED}\\n");
+        expected.put("DOUBLE", "tab\there");
+        expected.put("SPACED", "value with spaces");
+        assertEquals(expected, toMap(read));
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFormat.DOTENV.read(new StringReader("NO_VALUE")));
+        assertThrows(
+                IllegalArgumentException.class, () -> PropertiesFormat.DOTENV.read(new StringReader("OPEN=\"quote")));
+    }
+
+    @Test
+    void testDotenvRejectsKeysItCannotHold() throws IOException {
+        for (String key : List.of("A=B", "TWO\nLINES", " SPACED", "# COMMENT", "export KEY", "")) {
+            StringWriter writer = new StringWriter();
+            Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("FIRST", "value");
+            properties.put(key, "value");
+            assertThrows(
+                    IllegalArgumentException.class, () -> PropertiesFormat.DOTENV.write(properties, writer), key);
+            // Nothing is written, not even the properties before it.
+            assertEquals("", writer.toString());
+        }
+        // Keys which are not variable names are still written if they are read back as they are.
+        StringWriter writer = new StringWriter();
+        PropertiesFormat.DOTENV.write(Map.of("app.version", "1.0"), writer);
+        assertEquals("app.version=1.0\n", writer.toString());
+    }
+
+    @Test
+    void testYamlMustBeFlat() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PropertiesFormat.YAML.read(new StringReader("NESTED:\n  KEY: value\n")));
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFormat.YAML.read(new StringReader("- a\n- b\n")));
+    }
+
+    @Test
+    void testYamlKeepsScalarsAsWritten() throws IOException {
+        List<StringProperty> read = PropertiesFormat.YAML.read(new StringReader("""
+                VERSION: 1.10
+                MODE: 0755
+                PORT: 08080
+                FLAG: yes
+                SWITCH: on
+                DATE: 2024-01-01
+                TILDE: ~
+                BLANK:
+                QUOTED: '007'
+                REFERENCE: ${OTHER}/x
+                """));
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("VERSION", "1.10");
+        expected.put("MODE", "0755");
+        expected.put("PORT", "08080");
+        expected.put("FLAG", "yes");
+        expected.put("SWITCH", "on");
+        expected.put("DATE", "2024-01-01");
+        expected.put("TILDE", "~");
+        expected.put("BLANK", "");
+        expected.put("QUOTED", "007");
+        expected.put("REFERENCE", "${OTHER}/x");
+        assertEquals(expected, toMap(read));
+        assertThrows(
+                IllegalArgumentException.class, () -> PropertiesFormat.YAML.read(new StringReader("KEY: [unclosed\n")));
+    }
+
+    @Test
+    void testJson() throws IOException {
+        List<StringProperty> read = PropertiesFormat.JSON.read(new StringReader("""
+                {"ARRAY": "[1, 2]", "NUMBER": 42, "DECIMAL": 1.50, "FLAG": false, "NOTHING": null,
+                 "ESCAPED": "a\\u0001b\\tc"}
+                """));
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("ARRAY", "[1, 2]");
+        expected.put("NUMBER", "42");
+        expected.put("DECIMAL", "1.50");
+        expected.put("FLAG", "false");
+        expected.put("NOTHING", "null");
+        expected.put("ESCAPED", "a\u0001b\tc");
+        assertEquals(expected, toMap(read));
+        StringWriter writer = new StringWriter();
+        PropertiesFormat.JSON.write(expected, writer);
+        assertEquals(expected, toMap(PropertiesFormat.JSON.read(new StringReader(writer.toString()))));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PropertiesFormat.JSON.read(new StringReader("{\"NESTED\": {\"KEY\": \"value\"}}")));
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFormat.JSON.read(new StringReader("[1, 2]")));
+        assertThrows(IllegalArgumentException.class, () -> PropertiesFormat.JSON.read(new StringReader("{\"KEY\": ")));
+    }
+
+    @Test
+    void testForFileName() {
+        assertEquals(PropertiesFormat.DOTENV, PropertiesFormat.forFileName("prod.env", PropertiesFormat.PROPERTIES));
+        assertEquals(PropertiesFormat.YAML, PropertiesFormat.forFileName("props.yml", PropertiesFormat.PROPERTIES));
+        assertEquals(PropertiesFormat.JSON, PropertiesFormat.forFileName("props.json", PropertiesFormat.DOTENV));
+        assertEquals(PropertiesFormat.DOTENV, PropertiesFormat.forFileName("props.txt", PropertiesFormat.DOTENV));
+    }
+}
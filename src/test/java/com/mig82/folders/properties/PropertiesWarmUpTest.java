@@ -0,0 +1,40 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.hudson.plugins.folder.Folder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertiesWarmUpTest {
+
+    @Test
+    void testWarmUpResolvesEveryFolder(JenkinsRule r) throws Exception {
+        List<AbstractFolder<?>> folders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Folder top = r.jenkins.createProject(Folder.class, "top-" + i);
+            FolderProperties<?> properties = new FolderProperties<>();
+            properties.setProperties(new StringProperty[] {new StringProperty("TOP", String.valueOf(i))});
+            top.addProperty(properties);
+            folders.add(top);
+            for (int j = 0; j < 10; j++) {
+                folders.add(top.createProject(Folder.class, "sub-" + j));
+            }
+        }
+        PropertiesCache.invalidateAll();
+
+        assertEquals(folders.size(), PropertiesWarmUp.warmUp(folders, 4));
+
+        for (AbstractFolder<?> folder : folders) {
+            PropertyLayer layer = PropertiesCache.get(folder.getFullName());
+            assertNotNull(layer, folder.getFullName());
+            assertEquals(folder.getFullName().substring("top-".length(), "top-".length() + 1), layer.get("TOP"));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PropertyFilterTest {
+
+    @Test
+    void testAll() {
+        assertSame(PropertyFilter.ALL, PropertyFilter.compile(null, " "));
+        assertTrue(PropertyFilter.ALL.isAll());
+        assertTrue(PropertyFilter.ALL.matches("ANY"));
+    }
+
+    @Test
+    void testPatterns() {
+        PropertyFilter filter = PropertyFilter.compile("SCM_URL, deploy_*\nA?C *_HOME_*", null);
+        assertFalse(filter.isAll());
+        assertTrue(filter.matches("scm_url"));
+        assertFalse(filter.matches("SCM_URL_2"));
+        assertTrue(filter.matches("DEPLOY_ENV"));
+        assertTrue(filter.matches("DEPLOY_"));
+        assertFalse(filter.matches("PRE_DEPLOY_ENV"));
+        assertTrue(filter.matches("abc"));
+        assertFalse(filter.matches("ABBC"));
+        assertTrue(filter.matches("JAVA_HOME_17"));
+        assertFalse(filter.matches("JAVA_HOME"));
+        // Characters which mean something in regular expressions are matched literally.
+        assertTrue(PropertyFilter.compile("a.b*(c)", null).matches("A.Bxx(C)"));
+        assertFalse(PropertyFilter.compile("a.b*(c)", null).matches("AxBxx(C)"));
+    }
+
+    @Test
+    void testExclude() {
+        PropertyFilter filter = PropertyFilter.compile(null, "*_SECRET");
+        assertTrue(filter.matches("DB_URL"));
+        assertFalse(filter.matches("db_secret"));
+        filter = PropertyFilter.compile("DB_*", "*_SECRET");
+        assertTrue(filter.matches("DB_URL"));
+        assertFalse(filter.matches("DB_SECRET"));
+        assertFalse(filter.matches("API_URL"));
+    }
+
+    @Test
+    void testSelect() {
+        PropertyLayer top = new PropertyLayer(
+                "top",
+                PropertyTable.of(List.of(new StringProperty("DB_URL", "top"), new StringProperty("DB_USER", "top"))),
+                PropertyLayer.EMPTY);
+        PropertyLayer sub = new PropertyLayer(
+                "top/sub",
+                PropertyTable.of(List.of(
+                        new StringProperty("db_url", "sub"),
+                        new StringProperty("DB_URL", "repeated"),
+                        new StringProperty("OTHER", "sub"))),
+                top);
+
+        assertEquals(sub.asMap(), PropertiesLoader.select(sub, PropertyFilter.ALL));
+        Map<String, String> selected = PropertiesLoader.select(sub, PropertyFilter.compile("DB_*", "*_USER"));
+        assertEquals(Map.of("db_url", "sub"), Map.copyOf(selected));
+        assertEquals("sub", selected.get("DB_URL"));
+    }
+}
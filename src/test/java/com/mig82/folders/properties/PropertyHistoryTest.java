@@ -0,0 +1,106 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.actions.PropertiesHistoryView;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertyHistoryTest {
+
+    /**
+     * Waits for the clock to move on, so that the next change gets a later time than the one returned.
+     */
+    private static long tick() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        while (System.currentTimeMillis() <= now) {
+            Thread.sleep(1);
+        }
+        return now;
+    }
+
+    private static FolderProperties<?> add(Folder folder) throws Exception {
+        FolderProperties<?> properties = new FolderProperties<>();
+        folder.addProperty(properties);
+        return properties;
+    }
+
+    @Test
+    void testHistory(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder sub = top.createProject(Folder.class, "sub");
+        FreeStyleProject p = sub.createProject(FreeStyleProject.class, "p");
+        FolderProperties<?> topProperties = add(top);
+        FolderProperties<?> subProperties = add(sub);
+
+        topProperties.setProperties(
+                new StringProperty[] {new StringProperty("TARGET", "staging"), new StringProperty("REGION", "eu")});
+        long staging = tick();
+        topProperties.replaceTable(PropertyTable.of(List.of(new StringProperty("TARGET", "production"))));
+        long production = tick();
+        subProperties.setProperties(new StringProperty[] {new StringProperty("OWN", "value")});
+        subProperties.setSealed(true);
+        long sealed = tick();
+
+        PropertyHistory history = topProperties.getHistory();
+        assertEquals("staging", history.getAt("target", staging).getValue());
+        assertEquals("production", history.getAt("TARGET", production).getValue());
+        assertNull(history.getAt("REGION", production));
+        assertNull(history.getAt("TARGET", history.getStart() - 1));
+        assertEquals(2, history.getChanges(staging + 1, Long.MAX_VALUE).size());
+
+        // The log holds the same history once read again.
+        PropertyHistory read = PropertyHistory.load(new File(top.getRootDir(), PropertyHistory.FILE_NAME));
+        Map<String, PropertyHistory.Change> properties = read.getPropertiesAt(staging);
+        assertEquals("eu", properties.get("REGION").getValue());
+        assertEquals("staging", properties.get("TARGET").getValue());
+
+        // The properties of the job are reconstructed from both folders, until the sub-folder was sealed.
+        PropertiesHistoryView view = new PropertiesHistoryView(p);
+        PropertiesHistoryView.Reconstruction before = view.getPropertiesAt(production);
+        assertEquals(1, before.getProperties().size());
+        assertEquals("production", before.getProperties().get(0).getValue());
+        assertTrue(before.getUnknownFolders().isEmpty());
+        PropertiesHistoryView.Reconstruction after = view.getPropertiesAt(sealed);
+        assertEquals(1, after.getProperties().size());
+        assertEquals("OWN", after.getProperties().get(0).getKey());
+        assertEquals(1, view.getChanges(production, Long.MAX_VALUE).stream()
+                .filter(change -> change.getType() == PropertyHistory.Type.SEAL)
+                .count());
+    }
+
+    @Test
+    void testUnchangedAndSharedProperties(JenkinsRule r) throws Exception {
+        Folder folder = r.jenkins.createProject(Folder.class, "folder");
+        FreeStyleProject p = folder.createProject(FreeStyleProject.class, "p");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("OWN", "value")});
+        folder.addProperty(properties);
+        assertTrue(properties.getHistory().isEmpty());
+
+        // Nothing was recorded yet, but the folder held its properties at least since it was saved.
+        PropertiesHistoryView view = new PropertiesHistoryView(p);
+        PropertiesHistoryView.Reconstruction now = view.getPropertiesAt(System.currentTimeMillis());
+        assertEquals("value", now.getProperties().get(0).getValue());
+        assertTrue(now.getUnknownFolders().isEmpty());
+
+        // Properties of shared sets are recorded along with those added to the folder.
+        PropertySets.get().setSets(List.of(new PropertySet("java", List.of(new StringProperty("JDK", "17")))));
+        properties.setSets("java");
+        long java17 = tick();
+        PropertySets.get().setSets(List.of(new PropertySet("java", List.of(new StringProperty("JDK", "21")))));
+        PropertyHistory history = properties.getHistory();
+        assertEquals("17", history.getAt("JDK", java17).getValue());
+        assertEquals("21", history.getAt("JDK", Long.MAX_VALUE).getValue());
+        assertEquals("value", history.getAt("OWN", java17).getValue());
+    }
+}
@@ -0,0 +1,75 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import hudson.EnvVars;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PropertyLayerTest {
+
+    private static PropertyLayer layer(String folder, PropertyLayer parent, String... keysAndValues) {
+        StringProperty[] properties = new StringProperty[keysAndValues.length / 2];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = new StringProperty(keysAndValues[2 * i], keysAndValues[2 * i + 1]);
+        }
+        return new PropertyLayer(folder, PropertyTable.of(List.of(properties)), parent);
+    }
+
+    @Test
+    void testShadowing() {
+        PropertyLayer top = layer("top", PropertyLayer.EMPTY, "key1", "top", "key2", "top");
+        PropertyLayer sub = layer("top/sub", top, "KEY1", "sub", "key1", "duplicate", "key3", "sub");
+
+        assertEquals("sub", sub.get("key1"));
+        assertEquals("top", sub.get("key2"));
+        assertNull(sub.get("missing"));
+        assertSame(top, sub.findSource("KEY2"));
+        assertSame(sub, sub.findSource("key3"));
+        assertEquals(3, sub.size());
+
+        // The view iterates over the properties of the nearest folder first and looks keys up ignoring case.
+        Map<String, String> view = sub.asMap();
+        assertEquals(List.of("KEY1", "key3", "key2"), List.copyOf(view.keySet()));
+        assertEquals("sub", view.get("Key1"));
+    }
+
+    @Test
+    void testShadowingAcrossLayers() {
+        PropertyLayer top = layer("top", PropertyLayer.EMPTY, "a", "top", "b", "top", "c", "top");
+        PropertyLayer mid = layer("top/mid", top, "B", "mid", "d", "mid");
+        PropertyLayer leaf = layer("top/mid/leaf", mid, "c", "leaf", "D", "leaf");
+
+        // Each key is only seen once, from the nearest layer defining it.
+        assertEquals(List.of("c", "D", "B", "a"), List.copyOf(leaf.asMap().keySet()));
+        assertEquals(List.of("leaf", "leaf", "mid", "top"), List.copyOf(leaf.asMap().values()));
+        assertEquals(4, leaf.size());
+        assertEquals(4, mid.size());
+    }
+
+    @Test
+    void testSameAsEnvVars() {
+        PropertyLayer top = layer("top", PropertyLayer.EMPTY, "a", "1", "b", "2");
+        PropertyLayer sub = layer("top/sub", top, "B", "3", "c", "4");
+
+        // What the loader used to build by putting each property unless it was already defined.
+        EnvVars expected = new EnvVars();
+        expected.put("B", "3");
+        expected.put("c", "4");
+        expected.put("a", "1");
+        assertEquals(expected, new EnvVars(sub.asMap()));
+    }
+
+    @Test
+    void testExpansionPlanIsShared() {
+        PropertyLayer top = layer("top", PropertyLayer.EMPTY, "a", "${b}/a", "b", "b");
+        assertSame(top.getExpansionPlan(), top.getExpansionPlan());
+
+        EnvVars env = new EnvVars();
+        top.getExpansionPlan().apply(env);
+        assertEquals("b/a", env.get("a"));
+    }
+}
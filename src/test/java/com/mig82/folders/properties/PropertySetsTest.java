@@ -0,0 +1,73 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.EnvVars;
+import hudson.model.FreeStyleProject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertySetsTest {
+
+    private static PropertySet set(String id, String key, String value) {
+        return new PropertySet(id, List.of(new StringProperty(key, value)));
+    }
+
+    private static FolderProperties<?> reference(Folder folder, String sets) throws Exception {
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("REGISTRY", "inline")});
+        properties.setSets(sets);
+        folder.addProperty(properties);
+        return properties;
+    }
+
+    @Test
+    void testSharedSets(JenkinsRule r) throws Exception {
+        PropertySets sets = PropertySets.get();
+        sets.setSets(List.of(
+                set("java", "JDK", "17"), set("docker", "REGISTRY", "shared"), set("other", "OTHER", "value")));
+        Folder a = r.jenkins.createProject(Folder.class, "a");
+        Folder b = r.jenkins.createProject(Folder.class, "b");
+        FolderProperties<?> aProperties = reference(a, "java, docker");
+        FolderProperties<?> bProperties = reference(b, "other");
+        FreeStyleProject p = a.createProject(FreeStyleProject.class, "p");
+
+        // Properties added to the folder shadow those of the sets.
+        EnvVars env = PropertiesLoader.loadFolderProperties(p);
+        assertEquals("17", env.get("JDK"));
+        assertEquals("inline", env.get("REGISTRY"));
+        PropertyTable aTable = aProperties.getTable();
+        PropertyTable bTable = bProperties.getTable();
+
+        // Saving the same sets again changes nothing.
+        sets.setSets(List.of(
+                set("java", "JDK", "17"), set("docker", "REGISTRY", "shared"), set("other", "OTHER", "value")));
+        assertSame(aTable, aProperties.getTable());
+
+        // Editing a set only publishes new properties for the folders referencing it.
+        sets.setSets(List.of(
+                set("java", "JDK", "21"), set("docker", "REGISTRY", "shared"), set("other", "OTHER", "value")));
+        assertEquals("21", PropertiesLoader.loadFolderProperties(p).get("JDK"));
+        assertSame(bTable, bProperties.getTable());
+
+        // The properties of the sets are not persisted in the configuration of the folder.
+        assertEquals(1, aProperties.getProperties().length);
+        assertEquals("java, docker", aProperties.getSets());
+        sets.setSets(List.of(set("docker", "REGISTRY", "shared")));
+        assertNull(PropertiesLoader.loadFolderProperties(p).get("JDK"));
+    }
+
+    @Test
+    void testIds(JenkinsRule r) {
+        assertEquals(List.of("a", "b.c", "d"), PropertySets.parseIds(" a,b.c  d, "));
+        assertNull(PropertySets.checkId("team-1_java.17"));
+        assertEquals(1, PropertySets.getTables("missing").length);
+        assertSame(PropertyTable.EMPTY, PropertySets.getTables("missing")[0]);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PropertyTableTest {
+
+    @Test
+    void testLookupIgnoresCaseAndKeepsFirstDefinition() {
+        PropertyTable table = PropertyTable.of(List.of(
+                new StringProperty("key1", "first"),
+                new StringProperty("KEY1", "second"),
+                new StringProperty("key2", "value2")));
+
+        assertEquals(3, table.size());
+        assertEquals("first", table.get("Key1"));
+        assertEquals(0, table.indexOf("KEY1"));
+        assertEquals("value2", table.get("key2"));
+        assertNull(table.get("key3"));
+        assertNull(table.get(null));
+    }
+
+    @Test
+    void testLookupInLargeTable() {
+        List<StringProperty> properties = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            properties.add(new StringProperty("key" + i, "value" + i));
+        }
+        PropertyTable table = PropertyTable.of(properties);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i, table.indexOf("KEY" + i));
+            assertEquals("value" + i, table.getValue(i));
+        }
+    }
+
+    @Test
+    void testAppendKeepsOrder() {
+        PropertyTable table = PropertyTable.of(List.of(new StringProperty("key1", "value1")))
+                .append(List.of(new StringProperty("key2", "value2")));
+        assertEquals("key1", table.getKey(0));
+        assertEquals("key2", table.getKey(1));
+        assertSame(PropertyTable.EMPTY, PropertyTable.of(List.of()));
+    }
+
+    @Test
+    void testConcatShadowsLaterTable() {
+        PropertyTable first = PropertyTable.of(List.of(new StringProperty("key1", "inline")));
+        PropertyTable table = first.concat(PropertyTable.of(
+                List.of(new StringProperty("KEY1", "file"), new StringProperty("key2", "file"))));
+        assertEquals(3, table.size());
+        assertEquals("inline", table.get("key1"));
+        assertEquals("file", table.get("key2"));
+        assertSame(first, first.concat(PropertyTable.EMPTY));
+    }
+
+    @Test
+    void testValuesAreShared() {
+        String url = new String("https://registry.example.com");
+        PropertyTable first = PropertyTable.of(List.of(new StringProperty("REGISTRY", url)));
+        PropertyTable second =
+                PropertyTable.of(List.of(new StringProperty("REGISTRY", new String("https://registry.example.com"))));
+        assertSame(first.getValue(0), second.getValue(0));
+        assertSame(first.getKey(0), second.getKey(0));
+    }
+
+    @Test
+    void testGenerations() {
+        PropertyTable first = PropertyTable.of(List.of(new StringProperty("key1", "value1")));
+        PropertyTable second = first.append(List.of(new StringProperty("key2", "value2")));
+        assertTrue(second.getGeneration() > first.getGeneration());
+
+        // A restamped table holds the same properties with a newer generation.
+        PropertyTable restamped = first.restamp();
+        assertTrue(restamped.getGeneration() > second.getGeneration());
+        assertEquals("value1", restamped.get("KEY1"));
+        assertEquals(first.size(), restamped.size());
+    }
+}
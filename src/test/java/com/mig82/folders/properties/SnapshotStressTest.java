@@ -0,0 +1,133 @@
+package com.mig82.folders.properties;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.model.FreeStyleProject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+/**
+ * Resolves the properties of a job in many threads while its ancestors are continuously reconfigured, and checks
+ * that every resolution is made of whole snapshots matching the generation vector it recorded.
+ */
+@WithJenkins
+class SnapshotStressTest {
+
+    private static final int KEYS = 10;
+    private static final int WRITES = 2000;
+    private static final int READERS = 8;
+
+    /**
+     * What each folder wrote in the table of each generation.
+     */
+    private final Map<Long, String> written = new ConcurrentHashMap<>();
+
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+    private PropertyTable table(String folder, int write) {
+        List<StringProperty> properties = new ArrayList<>();
+        String value = folder + "-" + write;
+        properties.add(new StringProperty("SHARED", value));
+        for (int i = 0; i < KEYS; i++) {
+            properties.add(new StringProperty(folder + "_" + i, value));
+        }
+        PropertyTable table = PropertyTable.of(properties);
+        written.put(table.getGeneration(), value);
+        return table;
+    }
+
+    private void check(PropertyLayer resolved, long[] previous) {
+        long[] generations = resolved.getGenerations();
+        Map<String, String> view = resolved.asMap();
+        String shared = null;
+        int i = 0;
+        for (PropertyLayer layer = resolved; layer.getFolder() != null; layer = layer.getParent(), i++) {
+            String folder = layer.getFolder().replace('/', '_');
+            String expected = written.get(generations[i]);
+            if (expected == null) {
+                continue; // The initial, empty table.
+            }
+            for (int k = 0; k < KEYS; k++) {
+                String actual = view.get(folder + "_" + k);
+                if (!expected.equals(actual)) {
+                    failures.add("Generation " + generations[i] + " of " + folder + " wrote " + expected
+                            + " but " + folder + "_" + k + " resolved to " + actual);
+                }
+            }
+            if (shared == null) {
+                shared = expected;
+            }
+            if (previous != null && previous.length == generations.length && previous[i] > generations[i]) {
+                failures.add("Generation of " + folder + " went back from " + previous[i] + " to " + generations[i]);
+            }
+        }
+        if (shared != null && !shared.equals(view.get("SHARED"))) {
+            failures.add("SHARED resolved to " + view.get("SHARED") + " instead of " + shared);
+        }
+    }
+
+    @Test
+    void testNoTornReads(JenkinsRule r) throws Exception {
+        Folder top = r.jenkins.createProject(Folder.class, "top");
+        Folder mid = top.createProject(Folder.class, "mid");
+        Folder leaf = mid.createProject(Folder.class, "leaf");
+        FreeStyleProject job = leaf.createProject(FreeStyleProject.class, "job");
+        List<FolderProperties<?>> folderProperties = new ArrayList<>();
+        for (Folder folder : List.of(top, mid, leaf)) {
+            FolderProperties<?> properties = new FolderProperties<>();
+            folder.addProperty(properties);
+            folderProperties.add(properties);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 3);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        String[] names = {"top", "top_mid", "top_mid_leaf"};
+        for (int f = 0; f < 3; f++) {
+            FolderProperties<?> properties = folderProperties.get(f);
+            String name = names[f];
+            writers.add(executor.submit(() -> {
+                for (int write = 0; write < WRITES; write++) {
+                    properties.replaceTable(table(name, write));
+                }
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < READERS; t++) {
+            readers.add(executor.submit(() -> {
+                long[] previous = null;
+                int reads = 0;
+                // Keep reading until the writers are done, and at least a few times.
+                while (writing.get() || reads < 100) {
+                    PropertyLayer resolved = PropertiesLoader.loadFolderPropertyLayer(job);
+                    check(resolved, previous);
+                    previous = resolved.getGenerations();
+                    reads++;
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(2, TimeUnit.MINUTES);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertTrue(failures.isEmpty(), failures.size() + " torn reads, e.g. " + failures.peek());
+    }
+}
@@ -0,0 +1,89 @@
+package com.mig82.folders.step;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.PipelineTestHelper;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.PropertiesLoader;
+import com.mig82.folders.properties.PropertiesSnapshot;
+import com.mig82.folders.properties.PropertyLayer;
+import com.mig82.folders.properties.StringProperty;
+import hudson.EnvVars;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class ExpanderImplTest {
+
+    private static byte[] serialize(Object o) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static EnvVars expand(byte[] serialized) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            EnvVars env = new EnvVars();
+            ((FolderPropertiesStep.ExpanderImpl) in.readObject()).expand(env);
+            return env;
+        }
+    }
+
+    private static void setProperties(Folder folder, String value) throws Exception {
+        // Replace the properties rather than adding to them, as the first property with a key shadows the others.
+        folder.getProperties().removeAll(FolderProperties.class);
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("KEY", value)});
+        folder.addProperty(properties);
+    }
+
+    @Test
+    void testSerializeByReference(JenkinsRule r) throws Exception {
+        Folder folder = r.jenkins.createProject(Folder.class, "f");
+        setProperties(folder, "a-rather-long-value");
+        WorkflowJob p = PipelineTestHelper.createJob(folder, "p", "echo('hello')");
+        WorkflowRun b = r.buildAndAssertSuccess(p);
+
+        PropertyLayer layer = PropertiesLoader.loadFolderPropertyLayer(p);
+        FolderPropertiesStep.ExpanderImpl expander = new FolderPropertiesStep.ExpanderImpl(
+                layer.asMap(), layer.getExpansionPlan(), PropertiesSnapshot.of(b, layer, null, null));
+        byte[] serialized = serialize(expander);
+
+        // Only the reference is serialized, and a single copy of the values is stored with the build.
+        assertFalse(new String(serialized, StandardCharsets.ISO_8859_1).contains("a-rather-long-value"));
+        File[] stored = new File(b.getRootDir(), "folder-properties").listFiles();
+        assertEquals(1, stored.length);
+        serialize(expander);
+        assertEquals(1, new File(b.getRootDir(), "folder-properties").listFiles().length);
+
+        // Rehydrated from the folder while it is unchanged, and from the stored copy once it changed.
+        assertEquals("a-rather-long-value", expand(serialized).get("KEY"));
+        setProperties(folder, "changed");
+        assertEquals("changed", PropertiesLoader.loadFolderProperties(p).get("KEY"));
+        assertEquals("a-rather-long-value", expand(serialized).get("KEY"));
+    }
+
+    @Test
+    void testSerializeByValue() throws Exception {
+        FolderPropertiesStep.ExpanderImpl expander =
+                new FolderPropertiesStep.ExpanderImpl(new EnvVars("KEY", "a-rather-long-value"));
+        byte[] serialized = serialize(expander);
+
+        assertTrue(new String(serialized, StandardCharsets.ISO_8859_1).contains("a-rather-long-value"));
+        assertEquals("a-rather-long-value", expand(serialized).get("KEY"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.mig82.folders.step;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.mig82.folders.PipelineTestHelper;
+import com.mig82.folders.properties.FolderProperties;
+import com.mig82.folders.properties.StringProperty;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PropertiesMemoTest {
+
+    @Test
+    void testMemoizedWhileBuilding(JenkinsRule r) throws Exception {
+        Folder folder = r.jenkins.createProject(Folder.class, "f");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("KEY", "first")});
+        folder.addProperty(properties);
+        FreeStyleProject p = folder.createProject(FreeStyleProject.class, "p");
+        List<PropertiesMemo.Selection> selections = new ArrayList<>();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws IOException {
+                selections.add(PropertiesMemo.select(build, null, null, false));
+                selections.add(PropertiesMemo.select(build, null, null, false));
+                selections.add(PropertiesMemo.select(build, "KEY", null, false));
+                FolderProperties<?> reconfigured = new FolderProperties<>();
+                reconfigured.setProperties(new StringProperty[] {new StringProperty("KEY", "second")});
+                folder.getProperties().remove(FolderProperties.class);
+                folder.addProperty(reconfigured);
+                selections.add(PropertiesMemo.select(build, null, null, false));
+                selections.add(PropertiesMemo.select(build, null, null, true));
+                return true;
+            }
+        });
+        r.buildAndAssertSuccess(p);
+
+        // The same selection is shared until a folder changes, except by the steps asking for stable properties.
+        assertSame(selections.get(0), selections.get(1));
+        assertNotSame(selections.get(0), selections.get(2));
+        assertEquals("first", selections.get(2).getProperties().get("KEY"));
+        assertEquals("second", selections.get(3).getProperties().get("KEY"));
+        assertSame(selections.get(0), selections.get(4));
+        assertEquals("first", selections.get(4).getProperties().get("KEY"));
+    }
+
+    @Test
+    void testParallelBranches(JenkinsRule r) throws Exception {
+        Folder folder = r.jenkins.createProject(Folder.class, "f");
+        FolderProperties<?> properties = new FolderProperties<>();
+        properties.setProperties(new StringProperty[] {new StringProperty("KEY", "value")});
+        folder.addProperty(properties);
+        WorkflowJob p = PipelineTestHelper.createJob(folder, "p", """
+                def branches = [:]
+                for (int i = 0; i < 4; i++) {
+                  def branch = "b-${i}"
+                  branches[branch] = { withFolderProperties(stable: true) { echo("${branch}: ${env.KEY}") } }
+                }
+                parallel(branches)
+                """);
+
+        WorkflowRun b = r.buildAndAssertSuccess(p);
+
+        for (int i = 0; i < 4; i++) {
+            r.assertLogContains("b-" + i + ": value", b);
+        }
+    }
+}